@@ -0,0 +1,740 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import application.model.BuildDetails;
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+import application.model.ItemDictionary;
+
+/**
+ * Reads and writes the builds data file.
+ * 
+ * <p>
+ * The file is a versioned binary format laid out in sections, all numbers
+ * are big-endian:
+ * </p>
+ * 
+ * <pre>
+ * Header        magic "BFDB", version (short), last updated (epoch day,
+ *               Long.MIN_VALUE for never), build count N
+ * Strings       count S, S + 1 byte offsets, UTF-8 data. Every name, URL,
+ *               author, patch and item is stored once and referenced by index
+ * Columns       N build ids (int), N classes (byte), N scores (int),
+ *               N last updated (long), N flags (byte), N names, N URLs,
+ *               N authors, N patches (string refs, -1 for none)
+ * Gear          N + 1 offsets (int) into the gear data, followed by the gear
+ *               data. Each build's block holds, per gear slot, the number of
+ *               items followed by their string refs
+ * </pre>
+ * 
+ * <p>
+ * Everything has a fixed width or an offset table, so any build can be read
+ * without reading the ones before it. That's what lets
+ * {@link #read(File)} map the file and leave most of it untouched until a
+ * build is actually used.
+ * </p>
+ * 
+ * <p>
+ * A file that's mapped is never written to or replaced. Every write starts a
+ * new generation next to it instead, named after the file with the
+ * generation number appended, like {@code builds.data.2}. The newest
+ * generation is the one that's read, older ones are deleted once nothing has
+ * them mapped anymore.
+ * </p>
+ */
+final class BuildDataFile {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final int MAGIC = 0x42464442;
+    private static final short VERSION = 1;
+
+    /**
+     * The first two bytes of a file written by Java serialization, which is
+     * what older versions used.
+     */
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    private static final long NEVER_UPDATED = Long.MIN_VALUE;
+    private static final int NO_STRING = -1;
+    private static final int UNKNOWN_ITEM = -1;
+
+    private static final int FLAG_FAVORITE = 1;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private BuildDataFile() {
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Checks if any generation of the given file exists.
+     */
+    public static boolean exists(File file) throws IOException {
+        return !getGenerations(file).isEmpty();
+    }
+
+    /**
+     * Checks if the newest generation of the given file was written by Java
+     * serialization, the format used before this one.
+     */
+    public static boolean isLegacyFile(File file) throws IOException {
+        Map.Entry<Long, Path> newest = getGenerations(file).lastEntry();
+
+        if (newest == null) {
+            return false;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(newest.getValue())) {
+            int first = inputStream.read();
+            int second = inputStream.read();
+
+            return ((first << 8) | second) == LEGACY_MAGIC;
+        }
+    }
+
+    /**
+     * Writes the given builds as the next generation of the given file.
+     * 
+     * <p>
+     * Builds read from a file that haven't been loaded since are copied over
+     * as they're stored, without loading them.
+     * </p>
+     */
+    public static void write(File file, Collection<BuildInfo> buildInfos,
+            LocalDate lastUpdated) throws IOException {
+
+        // Every column is written in this same order
+        List<BuildInfo> builds = new ArrayList<>(buildInfos);
+
+        // Pull everything out of the builds before the file is touched
+        StringTable strings = new StringTable();
+
+        int buildCount = builds.size();
+        int[] nameRefs = new int[buildCount];
+        int[] urlRefs = new int[buildCount];
+        int[] authorRefs = new int[buildCount];
+        int[] patchRefs = new int[buildCount];
+
+        int[] gearOffsets = new int[buildCount + 1];
+        IntList gearData = new IntList();
+
+        int row = 0;
+        for (BuildInfo buildInfo : builds) {
+            BuildInfo.LazyFields lazyFields = buildInfo.getLazyFields();
+            gearOffsets[row] = gearData.size();
+
+            if (lazyFields instanceof StoredFields) {
+                StoredFields storedFields = (StoredFields) lazyFields;
+                storedFields.contents.copyRow(storedFields.row, strings, gearData);
+
+                nameRefs[row] = strings.ref(storedFields.contents,
+                        storedFields.contents.getNameRef(storedFields.row));
+                urlRefs[row] = strings.ref(storedFields.contents,
+                        storedFields.contents.getUrlRef(storedFields.row));
+            } else {
+                nameRefs[row] = strings.ref(buildInfo.getBuildName());
+                urlRefs[row] = strings.ref(buildInfo.getBuildUrl().toString());
+
+                writeGear(buildInfo.getBuildGear(), strings, gearData);
+            }
+
+            authorRefs[row] = strings.ref(buildInfo.getAuthor());
+            patchRefs[row] = strings.ref(buildInfo.getPatch());
+
+            row++;
+        }
+
+        gearOffsets[buildCount] = gearData.size();
+
+        // Written in full before it's given its generation's name, so the
+        // newest generation is always complete
+        TreeMap<Long, Path> generations = getGenerations(file);
+        long generation = generations.isEmpty() ? 1 : generations.lastKey() + 1;
+
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong((lastUpdated == null) ? NEVER_UPDATED : lastUpdated.toEpochDay());
+            out.writeInt(buildCount);
+
+            strings.writeTo(out);
+
+            for (BuildInfo buildInfo : builds) {
+                out.writeInt(buildInfo.getBuildUrlId());
+            }
+
+            for (BuildInfo buildInfo : builds) {
+                out.writeByte(buildInfo.getD3Class().ordinal());
+            }
+
+            for (BuildInfo buildInfo : builds) {
+                out.writeInt(buildInfo.getBuildScore());
+            }
+
+            for (BuildInfo buildInfo : builds) {
+                out.writeLong(buildInfo.getBuildLastUpdated());
+            }
+
+            for (BuildInfo buildInfo : builds) {
+                out.writeByte(buildInfo.isFavorite() ? FLAG_FAVORITE : 0);
+            }
+
+            writeInts(out, nameRefs, buildCount);
+            writeInts(out, urlRefs, buildCount);
+            writeInts(out, authorRefs, buildCount);
+            writeInts(out, patchRefs, buildCount);
+
+            writeInts(out, gearOffsets, buildCount + 1);
+            writeInts(out, gearData.values, gearData.size());
+        }
+
+        Files.move(tempFile.toPath(), getGenerationPath(file, generation),
+                StandardCopyOption.ATOMIC_MOVE);
+
+        deleteGenerationsBefore(file, generation);
+    }
+
+    /**
+     * Opens the newest generation of the given file. The file is
+     * memory-mapped and only the build ids, classes, scores, dates, flags,
+     * authors and patches are read up front. The rest of each
+     * {@link BuildInfo} is read from the mapping the first time it's used.
+     * 
+     * <p>
+     * A mapping is only released once its buffer is garbage collected, and
+     * Windows won't delete a file that's still mapped. Older generations left
+     * behind because of that are cleaned up here.
+     * </p>
+     * 
+     * @throws IOException
+     *             If the file doesn't exist, can't be read, isn't a builds
+     *             file or was written by a newer version.
+     */
+    public static Contents read(File file) throws IOException {
+        Map.Entry<Long, Path> newest = getGenerations(file).lastEntry();
+
+        if (newest == null) {
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        deleteGenerationsBefore(file, newest.getKey());
+
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(newest.getValue(),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            return new Contents(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Builds data file is truncated: " + newest.getValue(),
+                    e);
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns every generation of the given file, by generation number. The
+     * file itself, as written by older versions, is generation 0.
+     */
+    private static TreeMap<Long, Path> getGenerations(File file) throws IOException {
+        TreeMap<Long, Path> generations = new TreeMap<>();
+
+        if (file.exists()) {
+            generations.put(0L, file.toPath());
+        }
+
+        Path directory = file.getAbsoluteFile().getParentFile().toPath();
+
+        if (!Files.isDirectory(directory)) {
+            return generations;
+        }
+
+        String prefix = file.getName() + ".";
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                prefix + "*")) {
+
+            for (Path path : paths) {
+                String suffix = path.getFileName().toString().substring(prefix.length());
+
+                // Backups and files still being written
+                if (suffix.isEmpty() || !suffix.chars().allMatch(Character::isDigit)) {
+                    continue;
+                }
+
+                try {
+                    generations.put(Long.parseLong(suffix), path);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        }
+
+        return generations;
+    }
+
+    private static Path getGenerationPath(File file, long generation) {
+        return new File(file.getPath() + "." + generation).toPath();
+    }
+
+    /**
+     * Deletes the generations of the given file older than the given one. A
+     * generation that's still mapped can't be deleted on Windows, it's left
+     * for next time.
+     */
+    private static void deleteGenerationsBefore(File file, long generation)
+            throws IOException {
+
+        for (Path path : getGenerations(file).headMap(generation).values()) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Still mapped
+            }
+        }
+    }
+
+    private static void writeGear(BuildGear buildGear, StringTable strings,
+            IntList gearData) {
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            Set<String> items = (buildGear == null) ? new HashSet<>()
+                    : buildGear.getItems(gearSlot);
+
+            gearData.add(items.size());
+            items.forEach(item -> gearData.add(strings.ref(item)));
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int count)
+            throws IOException {
+
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes
+    //
+    // ----------------------------------------------
+
+    /**
+     * The contents of a builds data file, read from a memory-mapped buffer.
+     */
+    public static class Contents {
+
+        private final ByteBuffer buffer;
+
+        private final LocalDate lastUpdated;
+        private final int buildCount;
+
+        private final int stringCount;
+        private final int stringOffsetsStart;
+        private final int stringDataStart;
+
+        private final int nameRefsStart;
+        private final int urlRefsStart;
+        private final int gearOffsetsStart;
+        private final int gearDataStart;
+
+        private final String[] strings;
+        private final int[] itemIds;
+        private final BuildInfo[] builds;
+
+        private Contents(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a builds data file");
+            }
+
+            short version = buffer.getShort(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported builds data version: " + version);
+            }
+
+            long epochDay = buffer.getLong(6);
+            lastUpdated = (epochDay == NEVER_UPDATED) ? null
+                    : LocalDate.ofEpochDay(epochDay);
+
+            buildCount = buffer.getInt(14);
+
+            stringCount = buffer.getInt(18);
+            stringOffsetsStart = 22;
+            stringDataStart = stringOffsetsStart + (stringCount + 1) * 4;
+            strings = new String[stringCount];
+
+            itemIds = new int[stringCount];
+            Arrays.fill(itemIds, UNKNOWN_ITEM);
+
+            int idsStart = stringDataStart + buffer.getInt(stringDataStart - 4);
+            int classesStart = idsStart + buildCount * 4;
+            int scoresStart = classesStart + buildCount;
+            int updatedStart = scoresStart + buildCount * 4;
+            int flagsStart = updatedStart + buildCount * 8;
+
+            nameRefsStart = flagsStart + buildCount;
+            urlRefsStart = nameRefsStart + buildCount * 4;
+
+            int authorRefsStart = urlRefsStart + buildCount * 4;
+            int patchRefsStart = authorRefsStart + buildCount * 4;
+
+            gearOffsetsStart = patchRefsStart + buildCount * 4;
+            gearDataStart = gearOffsetsStart + (buildCount + 1) * 4;
+
+            int gearDataLength = buffer.getInt(gearOffsetsStart + buildCount * 4);
+            if (gearDataStart + gearDataLength * 4 != buffer.limit()) {
+                throw new IOException("Builds data file has an unexpected size");
+            }
+
+            D3Class[] d3Classes = D3Class.values();
+            builds = new BuildInfo[buildCount];
+
+            for (int row = 0; row < buildCount; row++) {
+                builds[row] = new BuildInfo(d3Classes[buffer.get(classesStart + row)],
+                        buffer.getInt(idsStart + row * 4),
+                        buffer.getLong(updatedStart + row * 8),
+                        buffer.getInt(scoresStart + row * 4),
+                        getString(buffer.getInt(authorRefsStart + row * 4)),
+                        getString(buffer.getInt(patchRefsStart + row * 4)),
+                        new StoredFields(this, row));
+
+                builds[row].setFavorite(
+                        (buffer.get(flagsStart + row) & FLAG_FAVORITE) != 0);
+            }
+        }
+
+        /**
+         * Returns all builds in the file, in a new set.
+         */
+        public Set<BuildInfo> getBuilds() {
+            return new HashSet<>(Arrays.asList(builds));
+        }
+
+        public LocalDate getLastUpdated() {
+            return lastUpdated;
+        }
+
+        /**
+         * Returns the number of builds in the file.
+         */
+        public int size() {
+            return buildCount;
+        }
+
+        /**
+         * Returns the build in the given row.
+         */
+        public BuildInfo getBuild(int row) {
+            return builds[row];
+        }
+
+        /**
+         * Returns the {@link ItemDictionary} ids of the items in the given
+         * row, by {@link GearSlot} ordinal, without loading the rest of the
+         * build.
+         */
+        public synchronized int[][] getItemIds(int row) {
+            int[][] itemIds = new int[GearSlot.values().length][];
+            int offset = getGearOffset(row);
+
+            for (int slot = 0; slot < itemIds.length; slot++) {
+                itemIds[slot] = new int[buffer.getInt(offset)];
+                offset += 4;
+
+                for (int i = 0; i < itemIds[slot].length; i++) {
+                    itemIds[slot][i] = getItemId(buffer.getInt(offset));
+                    offset += 4;
+                }
+            }
+
+            return itemIds;
+        }
+
+        private synchronized BuildDetails readDetails(int row) {
+            BuildGear buildGear = new BuildGear();
+            int offset = getGearOffset(row);
+
+            for (GearSlot gearSlot : GearSlot.values()) {
+                int itemCount = buffer.getInt(offset);
+                offset += 4;
+
+                List<String> items = new ArrayList<>(itemCount);
+                for (int i = 0; i < itemCount; i++) {
+                    items.add(getString(buffer.getInt(offset)));
+                    offset += 4;
+                }
+
+                buildGear.setItems(gearSlot, items);
+            }
+
+            return new BuildDetails(getString(getNameRef(row)), builds[row].getAuthor(),
+                    builds[row].getPatch(), buildGear);
+        }
+
+        private synchronized String readUrl(int row) {
+            return getString(getUrlRef(row));
+        }
+
+        private int getNameRef(int row) {
+            return buffer.getInt(nameRefsStart + row * 4);
+        }
+
+        private int getUrlRef(int row) {
+            return buffer.getInt(urlRefsStart + row * 4);
+        }
+
+        /**
+         * Copies the gear block of the given row to the given gear data, with
+         * its strings added to the given table as they're stored.
+         */
+        private synchronized void copyRow(int row, StringTable strings,
+                IntList gearData) {
+
+            int offset = getGearOffset(row);
+
+            for (int slot = 0; slot < GearSlot.values().length; slot++) {
+                int itemCount = buffer.getInt(offset);
+                offset += 4;
+
+                gearData.add(itemCount);
+                for (int i = 0; i < itemCount; i++) {
+                    gearData.add(strings.ref(this, buffer.getInt(offset)));
+                    offset += 4;
+                }
+            }
+        }
+
+        /**
+         * Returns the stored UTF-8 bytes of the given string.
+         */
+        private synchronized byte[] getStringBytes(int ref) {
+            int start = buffer.getInt(stringOffsetsStart + ref * 4);
+            int end = buffer.getInt(stringOffsetsStart + (ref + 1) * 4);
+
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(stringDataStart + start + i);
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Returns the position of the gear block of the given row.
+         */
+        private int getGearOffset(int row) {
+            return gearDataStart + buffer.getInt(gearOffsetsStart + row * 4) * 4;
+        }
+
+        /**
+         * Returns the {@link ItemDictionary} id of the given item string,
+         * interning each distinct item only once per file.
+         */
+        private int getItemId(int ref) {
+            if (itemIds[ref] == UNKNOWN_ITEM) {
+                itemIds[ref] = ItemDictionary.intern(getString(ref));
+            }
+
+            return itemIds[ref];
+        }
+
+        private String getString(int ref) {
+            if (ref == NO_STRING) {
+                return "";
+            }
+
+            if (strings[ref] == null) {
+                strings[ref] = new String(getStringBytes(ref), StandardCharsets.UTF_8);
+            }
+
+            return strings[ref];
+        }
+
+    }
+
+    /**
+     * Loads the remaining fields of a single build from the file.
+     */
+    private static class StoredFields implements BuildInfo.LazyFields {
+
+        private final Contents contents;
+        private final int row;
+
+        public StoredFields(Contents contents, int row) {
+            this.contents = contents;
+            this.row = row;
+        }
+
+        @Override
+        public URL loadBuildUrl() {
+            String url = contents.readUrl(row);
+
+            try {
+                return new URL(url);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException("Stored build has an invalid URL: " + url,
+                        e);
+            }
+        }
+
+        @Override
+        public BuildDetails loadDetails() {
+            return contents.readDetails(row);
+        }
+
+    }
+
+    /**
+     * Collects the distinct strings of a file as it's being written. Strings
+     * are kept as their UTF-8 bytes, so strings of a file that was read can
+     * be added as they're stored.
+     */
+    private static class StringTable {
+
+        private final Map<ByteBuffer, Integer> refs = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+
+        /**
+         * The refs in this table of the strings of each file read, by their
+         * ref in that file. {@link #NO_STRING} until a string is added.
+         */
+        private final Map<Contents, int[]> copiedRefs = new IdentityHashMap<>();
+
+        public int ref(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+
+            return ref(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Adds a string of the given file, without decoding it.
+         */
+        public int ref(Contents contents, int ref) {
+            if (ref == NO_STRING) {
+                return NO_STRING;
+            }
+
+            int[] contentsRefs = copiedRefs.computeIfAbsent(contents, key -> {
+                int[] newRefs = new int[key.stringCount];
+                Arrays.fill(newRefs, NO_STRING);
+                return newRefs;
+            });
+
+            if (contentsRefs[ref] == NO_STRING) {
+                contentsRefs[ref] = ref(contents.getStringBytes(ref));
+            }
+
+            return contentsRefs[ref];
+        }
+
+        private int ref(byte[] bytes) {
+            return refs.computeIfAbsent(ByteBuffer.wrap(bytes), key -> {
+                encoded.add(bytes);
+                return encoded.size() - 1;
+            });
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(encoded.size());
+
+            int offset = 0;
+            out.writeInt(offset);
+
+            for (byte[] bytes : encoded) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        }
+
+    }
+
+    /**
+     * A growable int array.
+     */
+    private static class IntList {
+
+        private int[] values = new int[1024];
+        private int size;
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -2,23 +2,35 @@ package application;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
-import application.model.BuildGear;
 import application.model.BuildInfo;
 import application.model.D3Class;
+import application.model.GearSlot;
 
 /**
  * Data manager class for the build data. Handles saving, loading and provides
  * the application with methods to search for builds containing certain items.
+ * 
+ * <p>
+ * The builds are kept in an immutable {@link BuildSnapshot} that's swapped
+ * out as a whole on every change. Reading never locks, changes are made one at
+ * a time.
+ * </p>
  */
 public final class BuildDataManager {
 
@@ -29,8 +41,36 @@ public final class BuildDataManager {
     // ----------------------------------------------
 
     private final static File buildsData = new File("./data/", "builds.data");
-    private static Set<BuildInfo> buildInfoSet = new HashSet<>();
-    private static LocalDate lastUpdated;
+    private final static File legacyBackup = new File("./data/", "builds.data.bak");
+    private final static BuildJournal journal = new BuildJournal(
+            new File("./data/", "builds.journal"));
+
+    /**
+     * Once the journal grows past this many bytes it's folded into the builds
+     * data file, roughly ten thousand changes.
+     */
+    private final static long JOURNAL_COMPACTION_SIZE = 64 * 1024;
+
+    /**
+     * How long to wait for more changes before writing the builds data file.
+     */
+    private final static long WRITE_DELAY_MILLIS = 2000;
+
+    private final static BuildPersistence persistence = new BuildPersistence(buildsData,
+            journal, BuildDataManager::createSnapshot, WRITE_DELAY_MILLIS);
+
+    private final static AtomicReference<BuildSnapshot> snapshot = new AtomicReference<>(
+            BuildSnapshot.empty());
+
+    private final static List<BuildsListener> buildsListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The favorites and deletions made since the last
+     * {@link #replaceBuilds(Set, long)}, so they can be made again on the
+     * builds that replace the current ones.
+     */
+    private final static List<Change> changes = new ArrayList<>();
+    private static long changeCount;
 
     // ----------------------------------------------
     //
@@ -48,25 +88,26 @@ public final class BuildDataManager {
     // ----------------------------------------------
 
     /**
-     * Returns information about the data currently stored.
+     * Returns information about the data currently stored. The counts are
+     * kept by the {@link BuildSnapshot}, so this doesn't look at any builds.
      */
     public static String getDataInfo() {
+        BuildSnapshot currentSnapshot = snapshot.get();
+
         StringBuilder stringBuilder = new StringBuilder();
         String delimiter = "|";
 
         for (D3Class d3Class : D3Class.values()) {
 
-            long setCount = buildInfoSet.stream().filter(b -> b.getD3Class() == d3Class)
-                    .count();
-
             stringBuilder.append(String.format("%s: %d %s ", d3Class.getShorthandName(),
-                    setCount, delimiter));
+                    currentSnapshot.getClassCount(d3Class), delimiter));
 
         }
 
         // Trim last whitespace and delimiter
         stringBuilder.setLength(stringBuilder.length() - 2);
 
+        LocalDate lastUpdated = currentSnapshot.getLastUpdated();
         String buildsUpdatedDate = (lastUpdated == null) ? "Never"
                 : lastUpdated.toString();
 
@@ -75,122 +116,175 @@ public final class BuildDataManager {
 
     /**
      * Returns a set of {@link BuildInfo} instances that contain the requested
-     * item.
+     * item, either worn or cubed. The item name is matched case insensitively.
      */
     public static Set<BuildInfo> getBuildsWithItem(String targetItem) {
-        Set<BuildInfo> matchingBuilds = new HashSet<>();
+        return snapshot.get().getItemIndex().getBuildsWithItem(targetItem);
+    }
 
-        for (BuildInfo thisBuild : buildInfoSet) {
-            BuildGear buildGear = thisBuild.getBuildGear();
+    /**
+     * Returns a set of {@link BuildInfo} instances that have the requested
+     * item in the given slot.
+     */
+    public static Set<BuildInfo> getBuildsWithItem(String targetItem,
+            GearSlot gearSlot) {
 
-            // Found in cube-slot
-            if (buildGear.cubeWeapon.equals(targetItem)
-                    || buildGear.cubeArmor.equals(targetItem)
-                    || buildGear.cubeJewelry.equals(targetItem)) {
+        return snapshot.get().getItemIndex().getBuildsWithItem(targetItem, gearSlot);
+    }
 
-                matchingBuilds.add(thisBuild);
-                continue;
-            }
+    /**
+     * Returns a set of {@link BuildInfo} instances that have the requested
+     * item in Kanai's Cube.
+     */
+    public static Set<BuildInfo> getBuildsWithCubedItem(String targetItem) {
+        return snapshot.get().getItemIndex().getBuildsWithCubedItem(targetItem);
+    }
 
-            // @formatter:off
-            
-            buildGear.headSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-         
-            buildGear.shoulderSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.amuletSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.torsoSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.wristSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.handSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.waistSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.legSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.feetSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.ringSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.weaponSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            buildGear.offhandSlot.stream()
-                        .filter(item -> item.equalsIgnoreCase(targetItem))
-                        .findFirst()
-                        .ifPresent(item -> matchingBuilds.add(thisBuild));
-
-            // @formatter:on
+    /**
+     * Returns the builds matching the given {@link BuildQuery}.
+     */
+    public static Set<BuildInfo> findBuilds(BuildQuery buildQuery) {
+        return snapshot.get().getItemIndex().query(buildQuery);
+    }
 
-        }
+    /**
+     * Checks if the given build has the given item in Kanai's Cube.
+     */
+    public static boolean isCubed(BuildInfo buildInfo, String targetItem) {
+        return snapshot.get().getItemIndex().isCubed(buildInfo, targetItem);
+    }
 
-        return matchingBuilds;
+    /**
+     * Checks if the given build has the given item in the given slot.
+     */
+    public static boolean hasItem(BuildInfo buildInfo, String targetItem,
+            GearSlot gearSlot) {
+
+        return snapshot.get().getItemIndex().hasItem(buildInfo, targetItem, gearSlot);
     }
 
     /**
-     * Adds builds to the internal storage.
+     * Adds builds to the internal storage. A build that's already stored is
+     * replaced, and stays a favorite if it was one. Any registered
+     * {@link BuildsListener} is told about the builds afterwards, on the
+     * calling thread.
      */
     public static void addBuilds(Set<BuildInfo> builds) {
-        buildInfoSet.addAll(builds);
+        synchronized (BuildDataManager.class) {
+            BuildSnapshot currentSnapshot = snapshot.get();
+
+            for (BuildInfo buildInfo : builds) {
+                if (currentSnapshot.getFavoriteBuilds().contains(buildInfo)) {
+                    buildInfo.setFavorite(true);
+                }
+            }
+
+            snapshot.set(currentSnapshot.withBuilds(builds, Collections.emptySet()));
+        }
+
+        Set<BuildInfo> addedBuilds = Collections.unmodifiableSet(builds);
+        buildsListeners.forEach(listener -> listener.buildsAdded(addedBuilds));
     }
 
     /**
-     * Loads all builds from disk.
+     * Registers a listener that's told whenever builds are added or
+     * replaced.
      */
-    public static void loadBuilds() {
+    public static void addBuildsListener(BuildsListener listener) {
+        buildsListeners.add(listener);
+    }
 
-        // No file, no loading
-        if (!buildsData.exists()) {
-            buildsData.getParentFile().mkdirs();
-            return;
+    /**
+     * Removes a listener registered with
+     * {@link #addBuildsListener(BuildsListener)}.
+     */
+    public static void removeBuildsListener(BuildsListener listener) {
+        buildsListeners.remove(listener);
+    }
+
+    /**
+     * Replaces all stored builds with the given ones. The new builds are
+     * indexed before taking over, the old ones stay readable until then. Any
+     * registered {@link BuildsListener} is told about the new builds
+     * afterwards, on the calling thread.
+     * 
+     * <p>
+     * Builds marked as favorites or deleted after the given
+     * {@link #getChangeCount()} are marked or deleted again among the new
+     * builds, those changes were made after the new builds were put
+     * together.
+     * </p>
+     * 
+     * @param changeCount
+     *            The change count when the builds the new ones are based on
+     *            were read.
+     */
+    public static void replaceBuilds(Set<BuildInfo> builds, long changeCount) {
+        BuildSnapshot newSnapshot = BuildSnapshot.create(builds, null);
+
+        synchronized (BuildDataManager.class) {
+            for (Change change : changes) {
+                if (change.number > changeCount) {
+                    newSnapshot = change.applyTo(newSnapshot);
+                }
+            }
+
+            changes.clear();
+            snapshot.set(newSnapshot.withLastUpdated(snapshot.get().getLastUpdated()));
         }
 
+        Set<BuildInfo> addedBuilds = newSnapshot.getBuilds();
+        buildsListeners.forEach(listener -> listener.buildsAdded(addedBuilds));
+    }
+
+    /**
+     * Returns the number of favorites and deletions made so far. Read this
+     * along with the builds an update starts out from, and hand it to
+     * {@link #replaceBuilds(Set, long)}.
+     */
+    public static synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Loads all builds from disk. The builds are only read in full once
+     * they're used, see {@link BuildDataFile#read(File)}.
+     * 
+     * <p>
+     * A file in the old serialized format is converted to the current format,
+     * the original is kept as a backup.
+     * </p>
+     */
+    public static synchronized void loadBuilds() {
+
         try {
 
-            FileInputStream fileInputStream = new FileInputStream(buildsData);
-            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+            // No file, no loading
+            if (!BuildDataFile.exists(buildsData)) {
+                buildsData.getParentFile().mkdirs();
+                return;
+            }
 
-            DataWrapper dataWrapper = (DataWrapper) objectInputStream.readObject();
+            if (BuildDataFile.isLegacyFile(buildsData)) {
+                loadLegacyBuilds();
+
+                Files.copy(buildsData.toPath(), legacyBackup.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                saveBuilds();
+            } else {
+                BuildDataFile.Contents contents = BuildDataFile.read(buildsData);
 
-            buildInfoSet = dataWrapper.getBuildInfoSet();
-            lastUpdated = dataWrapper.getLastUpdated();
+                Set<BuildInfo> builds = contents.getBuilds();
+                Set<BuildInfo> deletedBuilds = replayJournal(builds);
 
-            objectInputStream.close();
-            fileInputStream.close();
+                ItemIndex itemIndex = ItemIndex.build(contents)
+                        .withChanges(Collections.emptySet(), deletedBuilds);
+
+                snapshot.set(BuildSnapshot.create(builds, itemIndex,
+                        contents.getLastUpdated()));
+
+                compactJournalIfNeeded();
+            }
 
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
@@ -198,55 +292,84 @@ public final class BuildDataManager {
     }
 
     /**
-     * Saves all builds to disk.
+     * Saves all builds to disk. The save happens in the background, changes
+     * made shortly after are saved along with it.
      */
     public static void saveBuilds() {
-        DataWrapper dataWrapper = new DataWrapper(buildInfoSet, lastUpdated);
-
-        try {
+        persistence.markDirty();
+    }
 
-            FileOutputStream fileOutputStream = new FileOutputStream(buildsData);
-            ObjectOutputStream outputStream = new ObjectOutputStream(fileOutputStream);
+    /**
+     * Writes any unsaved changes to disk and waits until they're written.
+     * Call this before the application exits.
+     */
+    public static void flushBuilds() {
+        persistence.flush();
+    }
 
-            outputStream.writeObject(dataWrapper);
+    /**
+     * Marks or unmarks a build as a favorite. Only the change itself is
+     * written to disk, see {@link BuildJournal}.
+     * 
+     * <p>
+     * The given build may be an older version of the stored one, like one
+     * that's still shown after an update replaced it. The stored version is
+     * the one that's marked, and saved.
+     * </p>
+     */
+    public static synchronized void setFavorite(BuildInfo build, boolean isFavorite) {
+        BuildSnapshot currentSnapshot = snapshot.get();
+        BuildInfo storedBuild = currentSnapshot.getItemIndex().getBuild(build);
 
-            outputStream.close();
-            fileOutputStream.close();
+        build.setFavorite(isFavorite);
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (storedBuild != null) {
+            storedBuild.setFavorite(isFavorite);
+            build = storedBuild;
         }
+
+        snapshot.set(currentSnapshot.withFavorite(build, isFavorite));
+        changes.add(new Change(++changeCount, isFavorite, build));
+
+        journal(isFavorite ? BuildJournal.Operation.FAVORITE
+                : BuildJournal.Operation.UNFAVORITE, build);
     }
 
     /**
      * Updates the date when the builds were last updated to the date when this
      * method is called.
      */
-    public static void updateLastUpdatedDate() {
-        lastUpdated = LocalDate.now();
+    public static synchronized void updateLastUpdatedDate() {
+        snapshot.set(snapshot.get().withLastUpdated(LocalDate.now()));
     }
 
     /**
-     * Deletes a specific builds from storage.
+     * Deletes a specific builds from storage. Only the deletion itself is
+     * written to disk, see {@link BuildJournal}.
      * 
      * @throws IllegalArgumentException
      *             If the given build isn't stored.
      */
-    public static void deleteBuild(BuildInfo build) {
-        if (!buildInfoSet.contains(build)) {
+    public static synchronized void deleteBuild(BuildInfo build) {
+        BuildSnapshot currentSnapshot = snapshot.get();
+
+        if (!currentSnapshot.getBuilds().contains(build)) {
             throw new IllegalArgumentException(
                     "The given build is not stored and cannot be deleted.");
         }
 
-        buildInfoSet.remove(build);
+        snapshot.set(currentSnapshot.withBuilds(Collections.emptySet(),
+                Collections.singleton(build)));
+        changes.add(new Change(++changeCount, null, build));
+
+        journal(BuildJournal.Operation.DELETE, build);
     }
 
     /**
      * Returns all builds marked as favorites.
      */
     public static Set<BuildInfo> getFavoriteBuilds() {
-        return buildInfoSet.stream().filter(buildInfo -> buildInfo.isFavorite())
-                .collect(Collectors.toSet());
+        return snapshot.get().getFavoriteBuilds();
     }
 
     // ----------------------------------------------
@@ -256,18 +379,122 @@ public final class BuildDataManager {
     // ----------------------------------------------
 
     /**
-     * Returns all the builds currently loaded. This is the actual set, any
-     * changes are reflected.
+     * Returns all the builds currently loaded. The set is a snapshot that
+     * can't be modified, later changes aren't reflected in it. Use
+     * {@link #addBuilds(Set)}, {@link #replaceBuilds(Set, long)} and
+     * {@link #deleteBuild(BuildInfo)} to change the stored builds.
      */
     public static Set<BuildInfo> getBuildInfoSet() {
-        return buildInfoSet;
+        return snapshot.get().getBuilds();
     }
 
     /**
      * Gets the date the data was last updated.
      */
     public static LocalDate getLastUpdated() {
-        return lastUpdated;
+        return snapshot.get().getLastUpdated();
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Loads a file written with Java serialization by an older version.
+     */
+    private static void loadLegacyBuilds() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                new FileInputStream(buildsData))) {
+
+            DataWrapper dataWrapper = (DataWrapper) objectInputStream.readObject();
+
+            snapshot.set(BuildSnapshot.create(dataWrapper.getBuildInfoSet(),
+                    dataWrapper.getLastUpdated()));
+        }
+    }
+
+    /**
+     * Applies the changes journaled since the builds data file was last
+     * written to the builds that were just loaded.
+     * 
+     * @return The builds that were deleted.
+     */
+    private static Set<BuildInfo> replayJournal(Set<BuildInfo> builds) throws IOException {
+        Set<BuildInfo> deletedBuilds = new HashSet<>();
+        List<BuildJournal.Entry> entries = journal.read();
+
+        if (entries.isEmpty()) {
+            return deletedBuilds;
+        }
+
+        Map<Long, BuildInfo> buildsByKey = new HashMap<>();
+        for (BuildInfo buildInfo : builds) {
+            buildsByKey.put(BuildJournal.getBuildKey(buildInfo), buildInfo);
+        }
+
+        for (BuildJournal.Entry entry : entries) {
+            BuildInfo buildInfo = buildsByKey.get(entry.getBuildKey());
+
+            // Already deleted, or dropped by an update since
+            if (buildInfo == null) {
+                continue;
+            }
+
+            switch (entry.getOperation()) {
+            case FAVORITE:
+                buildInfo.setFavorite(true);
+                break;
+            case UNFAVORITE:
+                buildInfo.setFavorite(false);
+                break;
+            case DELETE:
+                buildsByKey.remove(entry.getBuildKey());
+                builds.remove(buildInfo);
+                deletedBuilds.add(buildInfo);
+                break;
+            }
+        }
+
+        return deletedBuilds;
+    }
+
+    /**
+     * Appends a change to the journal. If that fails the builds are saved in
+     * full instead, so the change isn't lost.
+     */
+    private static void journal(BuildJournal.Operation operation, BuildInfo build) {
+        try {
+            journal.append(operation, build);
+        } catch (IOException e) {
+            e.printStackTrace();
+            saveBuilds();
+            return;
+        }
+
+        compactJournalIfNeeded();
+    }
+
+    /**
+     * Folds the journal into the builds data file once it has grown large
+     * enough.
+     */
+    private static void compactJournalIfNeeded() {
+        if (journal.size() > JOURNAL_COMPACTION_SIZE) {
+            saveBuilds();
+        }
+    }
+
+    /**
+     * Copies everything that goes into the builds data file. Anything
+     * journaled after this is left in the journal.
+     */
+    private static synchronized BuildPersistence.Snapshot createSnapshot() {
+        BuildSnapshot currentSnapshot = snapshot.get();
+
+        return new BuildPersistence.Snapshot(currentSnapshot.getBuilds(),
+                currentSnapshot.getLastUpdated(), journal.position());
     }
 
     // ----------------------------------------------
@@ -277,7 +504,65 @@ public final class BuildDataManager {
     // ----------------------------------------------
 
     /**
-     * Used to wrap the set and the date to one file when saving/loading.
+     * Listens for builds being added to the storage, see
+     * {@link BuildDataManager#addBuilds(Set)}.
+     */
+    @FunctionalInterface
+    public interface BuildsListener {
+
+        /**
+         * Called with the builds that were just added, on the thread that
+         * added them. They're already part of any query by then.
+         */
+        void buildsAdded(Set<BuildInfo> addedBuilds);
+
+    }
+
+    /**
+     * A build marked as a favorite or deleted, see
+     * {@link BuildDataManager#replaceBuilds(Set, long)}.
+     */
+    private static final class Change {
+
+        private final long number;
+
+        /**
+         * Whether the build was marked as a favorite, or null if it was
+         * deleted.
+         */
+        private final Boolean isFavorite;
+        private final BuildInfo build;
+
+        public Change(long number, Boolean isFavorite, BuildInfo build) {
+            this.number = number;
+            this.isFavorite = isFavorite;
+            this.build = build;
+        }
+
+        /**
+         * Makes this change again on the given snapshot.
+         */
+        public BuildSnapshot applyTo(BuildSnapshot buildSnapshot) {
+            if (isFavorite == null) {
+                return buildSnapshot.withBuilds(Collections.emptySet(),
+                        Collections.singleton(build));
+            }
+
+            BuildInfo storedBuild = buildSnapshot.getItemIndex().getBuild(build);
+
+            if (storedBuild == null) {
+                return buildSnapshot;
+            }
+
+            storedBuild.setFavorite(isFavorite);
+            return buildSnapshot.withFavorite(storedBuild, isFavorite);
+        }
+
+    }
+
+    /**
+     * Used to wrap the set and the date to one file in the old serialized
+     * format. Only kept around to read old files.
      */
     private static class DataWrapper implements Serializable {
 
@@ -1,24 +1,47 @@
 package application;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
+import application.model.BuildDetails;
 import application.model.BuildInfo;
+import application.util.ConcurrencyLimiter;
+import application.util.HttpFetcher;
+import application.util.HttpFetcher.HttpStatusException;
 import javafx.util.Pair;
 
 /**
- * Responsible for running several threads that download data about the builds
- * we're processing.
+ * Long-lived download engine. A single instance is meant to serve a whole
+ * update and accepts work from every listing page and fetch URL.
+ * 
+ * <p>
+ * The number of requests in flight is not fixed. It grows while responses
+ * keep coming back as fast as before and backs off when the server starts
+ * timing out or throttling us, see {@link ConcurrencyLimiter}.
+ * </p>
+ * 
+ * <p>
+ * Work runs as a staged pipeline. Listing pages are downloaded on a pool of
+ * I/O threads and handed to a parse pool sized to the CPU cores. Build pages
+ * are read with a streaming extractor right on the I/O threads, which is
+ * cheap enough that it keeps up with the network. The caller merges the
+ * finished results through the returned {@link CompletableFuture}s.
+ * </p>
  */
 public class BuildDownloader {
 
@@ -28,13 +51,20 @@ public class BuildDownloader {
     //
     // ----------------------------------------------
 
-    private final ExecutorService executorService;
+    private final ConcurrencyLimiter limiter;
 
-    private BlockingQueue<BuildInfo> workQueue;
-    private BlockingQueue<ResultItem<Pair<BuildInfo, Document>>> resultQueue;
+    private final ExecutorService ioExecutor;
+    private final ExecutorService parseExecutor;
 
-    private final int workLoad;
-    private volatile int workDone = 0;
+    private final Set<CompletableFuture<?>> pendingWork = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Build page downloads by build id. A download is registered the first
+     * time its build is queued and stays for as long as this downloader
+     * lives, so every build page is downloaded once per update no matter how
+     * many fetch URLs list it.
+     */
+    private final ConcurrentMap<Integer, CompletableFuture<ResultItem<BuildDetails>>> buildDownloads = new ConcurrentHashMap<>();
 
     // ----------------------------------------------
     //
@@ -45,29 +75,18 @@ public class BuildDownloader {
     /**
      * Creates a new {@link BuildDownloader}.
      * 
-     * @param numOfWorkers
-     *            The amount of threads to use for this worker.
-     * @param workLoad
-     *            The amount of {@link BuildInfo} instances we're expected to
-     *            process.
+     * @param initialConcurrency
+     *            The amount of requests to start out with in flight. It's
+     *            adjusted as the download runs, see {@link #getConcurrency()}.
+     *            Parsing runs on its own pool, one thread per available core.
      */
-    public BuildDownloader(int numOfWorkers, int workLoad) {
-        this.workLoad = workLoad;
-        
-        executorService = Executors.newFixedThreadPool(numOfWorkers, new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setDaemon(true);
-                return t;
-            }
-        });
+    public BuildDownloader(int initialConcurrency) {
+        limiter = new ConcurrencyLimiter(initialConcurrency, 1,
+                HttpFetcher.getMaxConnectionsPerHost());
 
-        workQueue = new ArrayBlockingQueue<>(workLoad);
-        resultQueue = new ArrayBlockingQueue<>(workLoad);
-
-        for (int i = 0; i < numOfWorkers; i++) {
-            executorService.execute(new Worker(workQueue, resultQueue));
-        }
+        ioExecutor = createExecutor(limiter.getMaxLimit(), "Build downloader");
+        parseExecutor = createExecutor(Runtime.getRuntime().availableProcessors(),
+                "Build parser");
     }
 
     // ----------------------------------------------
@@ -77,141 +96,239 @@ public class BuildDownloader {
     // ----------------------------------------------
 
     /**
-     * Queues a new {@link BuildInfo} to be processed.
+     * Queues a new {@link BuildInfo} to be downloaded. The worker streams the
+     * page straight into the {@link BuildPageParser} and only hands back the
+     * resulting {@link BuildDetails}, so no page data is kept around while
+     * results wait to be merged.
+     * 
+     * <p>
+     * A build that was queued before, by this or any other caller, isn't
+     * downloaded again. The returned future completes with the result of the
+     * download that's already in flight, or already done.
+     * </p>
+     * 
+     * <p>
+     * The returned future never completes exceptionally, any error is reported
+     * through the {@link ResultItem} instead.
+     * </p>
      */
-    public void queueWork(BuildInfo buildInfo) {
-        try {
-            workQueue.put(buildInfo);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<ResultItem<Pair<BuildInfo, BuildDetails>>> queueWork(
+            BuildInfo buildInfo) {
+
+        CompletableFuture<ResultItem<BuildDetails>> download = buildDownloads
+                .computeIfAbsent(buildInfo.getBuildUrlId(),
+                        buildUrlId -> downloadDetails(buildInfo.getBuildUrl()));
+
+        return download.thenApply(resultItem -> new ResultItem<>(
+                new Pair<>(buildInfo, resultItem.getResult()),
+                resultItem.getThrowable()));
     }
 
     /**
-     * Returns an entry from the internal queue of finished work. Blocks if the
-     * internal queue is empty.
+     * Queues a listing page to be downloaded and parsed.
+     * 
+     * @return A future that completes exceptionally with an {@link IOException}
+     *         if the page couldn't be fetched.
      */
-    public ResultItem<Pair<BuildInfo, Document>> getResult() {
+    public CompletableFuture<Document> queueListing(String stringUrl) {
+        URL url;
+
         try {
-            return resultQueue.take();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            url = new URL(stringUrl);
+        } catch (IOException e) {
+            CompletableFuture<Document> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(e);
+            return failedFuture;
         }
+
+        return track(download(url).thenApplyAsync(html -> {
+
+            try {
+                return Jsoup.parse(new ByteArrayInputStream(html), "UTF-8", stringUrl);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+        }, parseExecutor));
     }
 
     /**
-     * Checks if there's still work to process or results to be fetched.
+     * Returns the number of requests currently allowed in flight. Hand this to
+     * the next {@link BuildDownloader} to pick up where this one left off.
      */
-    public boolean hasWork() {
-        if (workDone != workLoad || !resultQueue.isEmpty()) {
-            return true;
-        } else {
-            executorService.shutdownNow();
-            return false;
-        }
+    public int getConcurrency() {
+        return limiter.getLimit();
     }
 
     /**
-     * Stops and aborts all current work.
+     * Stops and aborts all current work. Any future that hasn't completed yet
+     * is cancelled.
      */
     public void cancelWork() {
-        executorService.shutdownNow();
+        ioExecutor.shutdownNow();
+        parseExecutor.shutdownNow();
+        pendingWork.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Shuts the worker threads down once all queued work is done. Call this
+     * when the update is finished.
+     */
+    public void shutdown() {
+        ioExecutor.shutdown();
+        parseExecutor.shutdown();
+    }
+
+    /**
+     * Unwraps the actual cause from a throwable that was thrown inside one of
+     * the pipeline stages.
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+
+        if (throwable instanceof UncheckedIOException) {
+            throwable = throwable.getCause();
+        }
+
+        return throwable;
     }
 
     // ----------------------------------------------
     //
-    // Inner class
+    // Private API
     //
     // ----------------------------------------------
 
     /**
-     * Worker class for performing the downloading.
+     * Downloads the build page at the given {@link URL}. The worker streams
+     * the page straight into the {@link BuildPageParser}, so the page itself
+     * is never kept in memory.
      */
-    private final class Worker implements Runnable {
+    private CompletableFuture<ResultItem<BuildDetails>> downloadDetails(URL buildUrl) {
+        CompletableFuture<ResultItem<BuildDetails>> future = CompletableFuture
+                .supplyAsync(() -> {
 
-        // ----------------------------------------------
-        //
-        // Fields
-        //
-        // ----------------------------------------------
+                    try {
 
-        private final BlockingQueue<BuildInfo> workQueue;
-        private BlockingQueue<ResultItem<Pair<BuildInfo, Document>>> resultQueue;
+                        return new ResultItem<>(limited(() -> {
+                            try (InputStream inputStream = HttpFetcher
+                                    .openStream(buildUrl)) {
+                                return BuildPageParser.extractDetails(inputStream);
+                            }
+                        }));
 
-        // ----------------------------------------------
-        //
-        // Constructor
-        //
-        // ----------------------------------------------
+                    } catch (IOException e) {
+                        return new ResultItem<BuildDetails>(e);
+                    }
 
-        public Worker(BlockingQueue<BuildInfo> workQueue,
-                BlockingQueue<ResultItem<Pair<BuildInfo, Document>>> resultQueue) {
+                }, ioExecutor)
+                .exceptionally(throwable -> new ResultItem<>(unwrap(throwable)));
 
-            this.workQueue = workQueue;
-            this.resultQueue = resultQueue;
-        }
+        return track(future);
+    }
 
-        // ----------------------------------------------
-        //
-        // run
-        //
-        // ----------------------------------------------
+    /**
+     * Creates the I/O stage for the given {@link URL}.
+     */
+    private CompletableFuture<byte[]> download(URL url) {
+        return CompletableFuture.supplyAsync(() -> {
 
-        @Override
-        public void run() {
+            try {
+                return limited(() -> HttpFetcher.fetchBytes(url));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
 
-            while (!Thread.currentThread().isInterrupted()) {
-                BuildInfo buildInfo = null;
+        }, ioExecutor);
+    }
 
-                try {
-                    buildInfo = workQueue.take();
-                } catch (InterruptedException e) {
-                    // This means we got interrupted by the Executor, time to
-                    // return and stop ourselves
-                    return;
-                }
+    /**
+     * Runs the given request once the {@link ConcurrencyLimiter} allows it,
+     * and reports back how it went.
+     */
+    private <T> T limited(Request<T> request) throws IOException {
+        ConcurrencyLimiter.Permit permit;
 
-                try {
+        try {
+            permit = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to download");
+        }
 
-                    String html = downloadHtml(buildInfo.getBuildUrl());
+        try {
 
-                    Pair<BuildInfo, Document> result = new Pair<BuildInfo, Document>(
-                            buildInfo, Jsoup.parse(html.toString()));
+            T result = request.run();
+            permit.success();
+            return result;
 
-                    resultQueue.add(new ResultItem<>(result));
+        } catch (IOException e) {
 
-                } catch (IOException e) {
+            if (isOverload(e)) {
+                permit.overload();
+            }
 
-                    Pair<BuildInfo, Document> result = new Pair<BuildInfo, Document>(
-                            buildInfo, null);
+            throw e;
 
-                    resultQueue.add(new ResultItem<Pair<BuildInfo, Document>>(result, e));
+        } finally {
+            // No-op unless the request failed without a verdict
+            permit.ignore();
+        }
+    }
 
-                }
+    /**
+     * Checks if the given exception means the server is struggling to keep up
+     * with us.
+     */
+    private static boolean isOverload(IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            return true;
+        }
 
-                workDone++;
-            }
+        if (e instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) e).getStatusCode();
+            return statusCode == 429 || statusCode >= 500;
         }
 
-        // ----------------------------------------------
-        //
-        // Private API
-        //
-        // ----------------------------------------------
+        return false;
+    }
 
-        /**
-         * Downloads the HTML form the given {@link URL}.
-         */
-        private String downloadHtml(URL url) throws IOException {
-            BufferedReader bufferedReader = new BufferedReader(
-                    new InputStreamReader(url.openStream(), "UTF-8"));
+    /**
+     * Keeps track of the given future until it completes, so it can be
+     * cancelled along with the rest of the work.
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pendingWork.add(future);
+        future.whenComplete((result, throwable) -> pendingWork.remove(future));
 
-            StringBuilder html = new StringBuilder();
-            bufferedReader.lines().forEach(html::append);
-            bufferedReader.close();
+        return future;
+    }
 
-            return html.toString();
-        }
+    /**
+     * Creates a fixed pool of daemon threads with the given name.
+     */
+    private static ExecutorService createExecutor(int threadCount, String threadName) {
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner interface
+    //
+    // ----------------------------------------------
+
+    /**
+     * A single blocking request.
+     */
+    @FunctionalInterface
+    private interface Request<T> {
+        T run() throws IOException;
     }
 
 }
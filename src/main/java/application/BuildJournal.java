@@ -0,0 +1,301 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import application.model.BuildInfo;
+import application.model.D3Class;
+
+/**
+ * A small write-ahead journal for changes made to single builds in between
+ * full saves of the builds data file.
+ * 
+ * <p>
+ * Every change is appended as a fixed size record and synced to disk right
+ * away, so it costs a few bytes of I/O instead of a rewrite of every build.
+ * The journal is replayed on top of the builds data file when loading, and
+ * the records a full save has made redundant are dropped with
+ * {@link #discard(long)}.
+ * </p>
+ * 
+ * <pre>
+ * Header        magic "BFJL", version (byte)
+ * Records       operation (byte), class (byte), build id (int)
+ * </pre>
+ * 
+ * <p>
+ * Records only ever set a value, they never toggle one, so replaying a record
+ * that's already reflected in the builds data file does no harm. A record
+ * that was cut short by a crash is ignored.
+ * </p>
+ */
+final class BuildJournal {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final int MAGIC = 0x42464A4C;
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 5;
+    private static final int RECORD_SIZE = 6;
+
+    private final File file;
+
+    /**
+     * The number of bytes dropped from the front of the file so far, which
+     * keeps positions handed out by {@link #position()} valid.
+     */
+    private long discardedLength;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    /**
+     * Creates a journal backed by the given file. The file is created on the
+     * first append.
+     */
+    public BuildJournal(File file) {
+        this.file = file;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Appends a record for the given build and waits until it's on disk.
+     */
+    public synchronized void append(Operation operation, BuildInfo buildInfo)
+            throws IOException {
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            long size = channel.size();
+
+            if (size < HEADER_SIZE) {
+                size = 0;
+                record.putInt(MAGIC);
+                record.put(VERSION);
+            } else {
+                // Drop a record that was cut short by a crash, so this one
+                // doesn't end up misaligned behind it
+                size -= (size - HEADER_SIZE) % RECORD_SIZE;
+            }
+
+            record.put((byte) operation.ordinal());
+            record.put((byte) buildInfo.getD3Class().ordinal());
+            record.putInt(buildInfo.getBuildUrlId());
+            record.flip();
+
+            channel.truncate(size);
+            channel.position(size);
+
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Reads all records in the journal, oldest first. A missing journal has no
+     * records.
+     * 
+     * @throws IOException
+     *             If the journal couldn't be read, or isn't a journal at all.
+     */
+    public synchronized List<Entry> read() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+
+        if (file.length() < HEADER_SIZE) {
+            return entries;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (inputStream.readInt() != MAGIC) {
+                throw new IOException("Not a builds journal: " + file);
+            }
+
+            byte version = inputStream.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+
+            byte[] record = new byte[RECORD_SIZE];
+
+            while (true) {
+                try {
+                    inputStream.readFully(record);
+                } catch (EOFException e) {
+                    // Either the end, or a record cut short by a crash
+                    break;
+                }
+
+                entries.add(new Entry(record));
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Returns the current end of the journal. Hand this to
+     * {@link #discard(long)} once everything up to here has been saved in
+     * full. Positions keep counting up across discards.
+     */
+    public synchronized long position() {
+        return discardedLength + file.length();
+    }
+
+    /**
+     * Returns the size of the journal file in bytes.
+     */
+    public synchronized long size() {
+        return file.length();
+    }
+
+    /**
+     * Drops the records before the given {@link #position()}. Any record
+     * appended after that is kept.
+     */
+    public synchronized void discard(long position) throws IOException {
+        long length = file.length();
+        long discardLength = position - discardedLength;
+
+        if (discardLength <= HEADER_SIZE) {
+            return;
+        }
+
+        if (discardLength >= length) {
+            Files.deleteIfExists(file.toPath());
+            discardedLength += length;
+            return;
+        }
+
+        byte[] remaining = new byte[(int) (length - discardLength)];
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.seek(discardLength);
+            randomAccessFile.readFully(remaining);
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            DataOutputStream header = new DataOutputStream(outputStream);
+            header.writeInt(MAGIC);
+            header.writeByte(VERSION);
+            header.write(remaining);
+            header.flush();
+
+            outputStream.getChannel().force(false);
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The header is written again, only the records are gone
+        discardedLength += discardLength - HEADER_SIZE;
+    }
+
+    /**
+     * Returns a key that identifies the given build, the same way
+     * {@link Entry#getBuildKey()} does for a record.
+     */
+    public static long getBuildKey(BuildInfo buildInfo) {
+        return getBuildKey(buildInfo.getD3Class(), buildInfo.getBuildUrlId());
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private static long getBuildKey(D3Class d3Class, int buildUrlId) {
+        return ((long) buildUrlId << 8) | d3Class.ordinal();
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes & enums
+    //
+    // ----------------------------------------------
+
+    /**
+     * The changes that can be journaled. The ordinal is written to disk, only
+     * ever add new ones at the end.
+     */
+    public enum Operation {
+        FAVORITE, UNFAVORITE, DELETE;
+    }
+
+    /**
+     * A single record read back from the journal.
+     */
+    public static final class Entry {
+
+        private final Operation operation;
+        private final D3Class d3Class;
+        private final int buildUrlId;
+
+        private Entry(byte[] record) throws IOException {
+            int operationIndex = record[0];
+            int classIndex = record[1];
+
+            if (operationIndex < 0 || operationIndex >= Operation.values().length
+                    || classIndex < 0 || classIndex >= D3Class.values().length) {
+                throw new IOException(
+                        "Corrupt journal record: " + Arrays.toString(record));
+            }
+
+            this.operation = Operation.values()[operationIndex];
+            this.d3Class = D3Class.values()[classIndex];
+            this.buildUrlId = ByteBuffer.wrap(record).getInt(2);
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns a key that identifies the build this record is about, see
+         * {@link BuildJournal#getBuildKey(BuildInfo)}.
+         */
+        public long getBuildKey() {
+            return BuildJournal.getBuildKey(d3Class, buildUrlId);
+        }
+
+    }
+
+}
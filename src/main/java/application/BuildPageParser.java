@@ -0,0 +1,451 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import application.model.BuildDetails;
+import application.model.BuildGear;
+import application.model.GearSlot;
+import application.util.HtmlTagScanner;
+
+/**
+ * Extracts the details of a single build from its build page.
+ * 
+ * <p>
+ * The page is never turned into a full document. It's streamed through a
+ * {@link HtmlTagScanner} that only keeps track of the few elements we read
+ * from, the title, the byline, the Kanai cube and the twelve item lists, and
+ * stops reading as soon as all of them have been seen.
+ * </p>
+ */
+public final class BuildPageParser {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(
+            Arrays.asList("area", "base", "br", "col", "embed", "hr", "img", "input",
+                    "link", "meta", "param", "source", "track", "wbr"));
+
+    /**
+     * The item list ids on the page, in {@link GearSlot} order.
+     */
+    private static final List<String> ITEM_SLOTS = Arrays.asList("head", "shoulders",
+            "amulet", "torso", "wrists", "hands", "waist", "legs", "feet", "rings",
+            "weapon", "offhand");
+
+    private static final String PATCH_PREFIX = "Patch ";
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private BuildPageParser() {
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Reads the details of a build from its build page.
+     * 
+     * @param inputStream
+     *            The HTML of the build page. It's only read up until the gear
+     *            section has been parsed, closing it is up to the caller.
+     * 
+     * @throws IOException
+     *             If the page couldn't be read.
+     */
+    public static BuildDetails extractDetails(InputStream inputStream)
+            throws IOException {
+
+        PageHandler pageHandler = new PageHandler();
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        new HtmlTagScanner(reader, pageHandler).scan();
+
+        BuildGear buildGear = new BuildGear();
+        buildGear.setCubeWeapon(pageHandler.getField(Field.CUBE_WEAPON));
+        buildGear.setCubeArmor(pageHandler.getField(Field.CUBE_ARMOR));
+        buildGear.setCubeJewelry(pageHandler.getField(Field.CUBE_JEWELRY));
+
+        for (int i = 0; i < ITEM_SLOTS.size(); i++) {
+            buildGear.setItems(GearSlot.values()[i],
+                    pageHandler.getItems(ITEM_SLOTS.get(i)));
+        }
+
+        String patch = pageHandler.getField(Field.PATCH);
+
+        // Format is: Patch X.Y.Z, we don't want the "Patch " part. A page
+        // without a byline leaves the patch empty.
+        if (patch.startsWith(PATCH_PREFIX)) {
+            patch = patch.substring(PATCH_PREFIX.length());
+        } else {
+            patch = "";
+        }
+
+        return new BuildDetails(pageHandler.getField(Field.NAME),
+                pageHandler.getField(Field.AUTHOR), patch, buildGear);
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Performs any necessary processing on the text extracted from an element.
+     * Whitespace is collapsed the same way jsoup does it for element text.
+     */
+    private static String getRawText(CharSequence text) {
+        StringBuilder rawText = new StringBuilder(text.length());
+        boolean lastWasWhitespace = true;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                if (!lastWasWhitespace) {
+                    rawText.append(' ');
+                }
+
+                lastWasWhitespace = true;
+                continue;
+            }
+
+            rawText.append(c == '\u2019' ? '\'' : c);
+            lastWasWhitespace = false;
+        }
+
+        int length = rawText.length();
+        if (length > 0 && rawText.charAt(length - 1) == ' ') {
+            rawText.setLength(length - 1);
+        }
+
+        return rawText.toString();
+    }
+
+    /**
+     * Checks if the given class attribute contains the given class.
+     */
+    private static boolean hasClass(String classNames, String className) {
+        if (classNames == null) {
+            return false;
+        }
+
+        for (String thisClass : classNames.split("\\s+")) {
+            if (thisClass.equals(className)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes & enums
+    //
+    // ----------------------------------------------
+
+    /**
+     * The single-value fields we read from a build page.
+     */
+    private enum Field {
+        NAME, CUBE_WEAPON, CUBE_ARMOR, CUBE_JEWELRY, AUTHOR, PATCH;
+    }
+
+    /**
+     * An open element, along with whatever it means to us.
+     */
+    private static class Frame {
+
+        private final String tagName;
+
+        private Field field;
+        private Field kanaiField;
+
+        private boolean buildDetail;
+        private boolean byline;
+
+        private String itemSection;
+        private String itemList;
+        private String itemEntry;
+
+        private StringBuilder itemText;
+        private Frame itemOwner;
+
+        public Frame(String tagName) {
+            this.tagName = tagName;
+        }
+
+    }
+
+    /**
+     * Tracks the open elements and collects the text of the ones we're
+     * interested in. Matches the same elements as these selectors:
+     * 
+     * <pre>
+     * .build-title
+     * #kanai-weapon&gt;span, #kanai-armor&gt;span, #kanai-jewelry&gt;span
+     * #item-[slot]&gt;ul&gt;li .build-item
+     * div.build-detail &gt; div.build-byline &gt; a
+     * div.build-detail &gt; div.build-byline &gt; span
+     * </pre>
+     */
+    private static class PageHandler implements HtmlTagScanner.Handler {
+
+        private final List<Frame> openElements = new ArrayList<>();
+        private int capturingElements;
+
+        private final Map<Field, StringBuilder> fieldText = new EnumMap<>(Field.class);
+        private final Set<Field> foundFields = new HashSet<>();
+
+        private final Map<String, Set<String>> items = new HashMap<>();
+        private final Set<String> finishedItemSlots = new HashSet<>();
+
+        // ----------------------------------------------
+        //
+        // Handler
+        //
+        // ----------------------------------------------
+
+        @Override
+        public void startTag(String tagName, String id, String classNames,
+                boolean selfClosing) {
+
+            if (VOID_ELEMENTS.contains(tagName) || selfClosing) {
+                // jsoup reads a <br> as a space
+                if (tagName.equals("br") && wantsText()) {
+                    text(" ");
+                }
+
+                return;
+            }
+
+            // A new list item implicitly closes the previous one
+            if (tagName.equals("li") && getCurrentElement() != null
+                    && getCurrentElement().tagName.equals("li")) {
+                popTo(openElements.size() - 1);
+            }
+
+            Frame parent = getCurrentElement();
+            Frame frame = new Frame(tagName);
+
+            if (hasClass(classNames, "build-title")) {
+                frame.field = Field.NAME;
+            }
+
+            if (id != null && id.startsWith("kanai-")) {
+                frame.kanaiField = toKanaiField(id);
+            }
+
+            if (id != null && id.startsWith("item-")) {
+                frame.itemSection = id.substring(5);
+            }
+
+            if (tagName.equals("div") && hasClass(classNames, "build-detail")) {
+                frame.buildDetail = true;
+            }
+
+            if (parent != null) {
+
+                if (parent.kanaiField != null && tagName.equals("span")) {
+                    frame.field = parent.kanaiField;
+                }
+
+                if (parent.buildDetail && tagName.equals("div")
+                        && hasClass(classNames, "build-byline")) {
+                    frame.byline = true;
+                }
+
+                if (parent.byline && tagName.equals("a")) {
+                    frame.field = Field.AUTHOR;
+                } else if (parent.byline && tagName.equals("span")) {
+                    frame.field = Field.PATCH;
+                }
+
+                if (parent.itemSection != null && tagName.equals("ul")) {
+                    frame.itemList = parent.itemSection;
+                }
+
+                if (parent.itemList != null && tagName.equals("li")) {
+                    frame.itemEntry = parent.itemList;
+                    frame.itemText = new StringBuilder();
+                }
+
+            }
+
+            if (hasClass(classNames, "build-item")) {
+                frame.itemOwner = findItemEntry();
+            }
+
+            if (frame.field != null) {
+                StringBuilder text = fieldText.computeIfAbsent(frame.field,
+                        f -> new StringBuilder());
+
+                // Several matching elements are joined by a space
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+
+                capturingElements++;
+            }
+
+            if (frame.itemOwner != null) {
+                if (frame.itemOwner.itemText.length() > 0) {
+                    frame.itemOwner.itemText.append(' ');
+                }
+
+                capturingElements++;
+            }
+
+            openElements.add(frame);
+        }
+
+        @Override
+        public void endTag(String tagName) {
+            for (int i = openElements.size() - 1; i >= 0; i--) {
+                if (openElements.get(i).tagName.equals(tagName)) {
+                    popTo(i);
+                    return;
+                }
+            }
+
+            // Stray end tags without an open element are ignored
+        }
+
+        @Override
+        public void text(String text) {
+            for (Frame frame : openElements) {
+                if (frame.field != null) {
+                    fieldText.get(frame.field).append(text);
+                }
+
+                if (frame.itemOwner != null) {
+                    frame.itemOwner.itemText.append(text);
+                }
+            }
+        }
+
+        @Override
+        public boolean wantsText() {
+            return capturingElements > 0;
+        }
+
+        @Override
+        public boolean isDone() {
+            return finishedItemSlots.size() == ITEM_SLOTS.size()
+                    && foundFields.size() == Field.values().length;
+        }
+
+        // ----------------------------------------------
+        //
+        // Results
+        //
+        // ----------------------------------------------
+
+        public String getField(Field field) {
+            StringBuilder text = fieldText.get(field);
+            return (text == null) ? "" : getRawText(text);
+        }
+
+        public Set<String> getItems(String itemSlot) {
+            return items.getOrDefault(itemSlot, new HashSet<>());
+        }
+
+        // ----------------------------------------------
+        //
+        // Private API
+        //
+        // ----------------------------------------------
+
+        private Frame getCurrentElement() {
+            return openElements.isEmpty() ? null
+                    : openElements.get(openElements.size() - 1);
+        }
+
+        /**
+         * Closes all open elements from the given index and up.
+         */
+        private void popTo(int index) {
+            while (openElements.size() > index) {
+                Frame frame = openElements.remove(openElements.size() - 1);
+
+                if (frame.field != null) {
+                    foundFields.add(frame.field);
+                    capturingElements--;
+                }
+
+                if (frame.itemOwner != null) {
+                    capturingElements--;
+                }
+
+                if (frame.itemText != null) {
+                    String item = getRawText(frame.itemText);
+
+                    if (!item.isEmpty()) {
+                        items.computeIfAbsent(frame.itemEntry, s -> new HashSet<>())
+                                .add(item);
+                    }
+                }
+
+                if (frame.itemSection != null && ITEM_SLOTS.contains(frame.itemSection)) {
+                    finishedItemSlots.add(frame.itemSection);
+                }
+            }
+        }
+
+        /**
+         * Returns the closest open item list entry, or null if we're not
+         * inside one.
+         */
+        private Frame findItemEntry() {
+            for (int i = openElements.size() - 1; i >= 0; i--) {
+                Frame frame = openElements.get(i);
+
+                if (frame.itemText != null) {
+                    return frame;
+                }
+            }
+
+            return null;
+        }
+
+        private Field toKanaiField(String id) {
+            switch (id) {
+            case "kanai-weapon":
+                return Field.CUBE_WEAPON;
+            case "kanai-armor":
+                return Field.CUBE_ARMOR;
+            case "kanai-jewelry":
+                return Field.CUBE_JEWELRY;
+            default:
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import application.model.BuildInfo;
+
+/**
+ * Writes the builds data file in the background.
+ * 
+ * <p>
+ * Callers only report that something changed through {@link #markDirty()}.
+ * The first report schedules a write a short while later, and any report that
+ * comes in before it runs is covered by that same write. So a burst of
+ * changes, like a batch of deletes, ends up as a single write.
+ * </p>
+ * 
+ * <p>
+ * All writes happen one at a time on a single thread. The file itself is
+ * written next to the real one and renamed over it, see
+ * {@link BuildDataFile#write(File, Collection, LocalDate)}, so a write that's
+ * interrupted never leaves a broken file behind. Call {@link #flush()} before
+ * exiting to get the last changes on disk.
+ * </p>
+ */
+final class BuildPersistence {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final File file;
+    private final BuildJournal journal;
+    private final Supplier<Snapshot> snapshotSupplier;
+    private final long writeDelayMillis;
+
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Build persistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private boolean dirty;
+    private boolean writeScheduled;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    /**
+     * Creates a new {@link BuildPersistence}.
+     * 
+     * @param file
+     *            The builds data file to write.
+     * @param journal
+     *            The journal holding changes made since the last write. The
+     *            records a write includes are dropped once it's done.
+     * @param snapshotSupplier
+     *            Called on the persistence thread right before each write, to
+     *            copy what's going to be written.
+     * @param writeDelayMillis
+     *            How long to wait for more changes after the first one before
+     *            writing.
+     */
+    public BuildPersistence(File file, BuildJournal journal,
+            Supplier<Snapshot> snapshotSupplier, long writeDelayMillis) {
+
+        this.file = file;
+        this.journal = journal;
+        this.snapshotSupplier = snapshotSupplier;
+        this.writeDelayMillis = writeDelayMillis;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Reports that the builds have changed and need to be written. Returns
+     * right away, the write happens in the background.
+     */
+    public synchronized void markDirty() {
+        dirty = true;
+
+        if (writeScheduled) {
+            return;
+        }
+
+        writeScheduled = true;
+        executor.schedule(this::writeIfDirty, writeDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending changes right away and waits until they're on disk.
+     * Meant to be called when the application exits.
+     */
+    public void flush() {
+        try {
+            executor.submit(this::writeIfDirty).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Writes a fresh snapshot if anything changed since the last write. Only
+     * ever runs on the persistence thread.
+     */
+    private void writeIfDirty() {
+        synchronized (this) {
+            // Changes reported from here on need a write of their own
+            writeScheduled = false;
+
+            if (!dirty) {
+                return;
+            }
+
+            dirty = false;
+        }
+
+        Snapshot snapshot = snapshotSupplier.get();
+
+        try {
+            BuildDataFile.write(file, snapshot.builds, snapshot.lastUpdated);
+            journal.discard(snapshot.journalPosition);
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            // Try again with the next change, or the final flush
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes & enums
+    //
+    // ----------------------------------------------
+
+    /**
+     * A copy of everything that goes into the builds data file, along with
+     * the {@link BuildJournal#position()} it's up to date with.
+     */
+    public static final class Snapshot {
+
+        private final List<BuildInfo> builds;
+        private final LocalDate lastUpdated;
+        private final long journalPosition;
+
+        public Snapshot(Collection<BuildInfo> builds, LocalDate lastUpdated,
+                long journalPosition) {
+
+            this.builds = new ArrayList<>(builds);
+            this.lastUpdated = lastUpdated;
+            this.journalPosition = journalPosition;
+        }
+
+    }
+
+}
@@ -0,0 +1,187 @@
+package application;
+
+import java.util.BitSet;
+
+import application.model.D3Class;
+import application.model.GearSlot;
+
+/**
+ * A query over the stored builds, built from terms combined with AND, OR and
+ * NOT. For example, all non-wizard builds wearing Convention of Elements and
+ * Tal Rasha's Guise of Wisdom:
+ * 
+ * <pre>
+ * BuildQuery.item("Convention of Elements")
+ *         .and(BuildQuery.item("Tal Rasha's Guise of Wisdom"))
+ *         .andNot(BuildQuery.d3Class(D3Class.WIZARD));
+ * </pre>
+ * 
+ * <p>
+ * Queries are run by {@link BuildDataManager#findBuilds(BuildQuery)} as set
+ * operations over the posting lists of the {@link ItemIndex}, no build is
+ * looked at unless it's part of the result.
+ * </p>
+ */
+public final class BuildQuery {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final Lookup lookup;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private BuildQuery(Lookup lookup) {
+        this.lookup = lookup;
+    }
+
+    // ----------------------------------------------
+    //
+    // Terms
+    //
+    // ----------------------------------------------
+
+    /**
+     * Matches builds that use the given item, worn or cubed.
+     */
+    public static BuildQuery item(String item) {
+        return new BuildQuery(index -> index.getItemPosting(item));
+    }
+
+    /**
+     * Matches builds that have the given item in the given slot.
+     */
+    public static BuildQuery item(String item, GearSlot gearSlot) {
+        return new BuildQuery(index -> index.getItemPosting(item, gearSlot));
+    }
+
+    /**
+     * Matches builds that have the given item in any of the cube slots.
+     */
+    public static BuildQuery cubed(String item) {
+        return new BuildQuery(index -> index.getCubedPosting(item));
+    }
+
+    /**
+     * Matches builds for the given class.
+     */
+    public static BuildQuery d3Class(D3Class d3Class) {
+        return new BuildQuery(index -> index.getClassPosting(d3Class));
+    }
+
+    /**
+     * Matches builds made for the given patch, e.g. "2.6.1".
+     */
+    public static BuildQuery patch(String patch) {
+        return new BuildQuery(index -> index.getPatchPosting(patch));
+    }
+
+    /**
+     * Matches builds with a score between the given values, both inclusive.
+     */
+    public static BuildQuery score(int minScore, int maxScore) {
+        return new BuildQuery(index -> index.getScorePosting(minScore, maxScore));
+    }
+
+    /**
+     * Matches all builds.
+     */
+    public static BuildQuery all() {
+        return new BuildQuery(ItemIndex::getAllBuilds);
+    }
+
+    /**
+     * Matches builds that don't match the given query.
+     */
+    public static BuildQuery not(BuildQuery query) {
+        return new BuildQuery(index -> {
+            BitSet result = index.getAllBuilds();
+            result.andNot(query.evaluate(index));
+            return result;
+        });
+    }
+
+    // ----------------------------------------------
+    //
+    // Operators
+    //
+    // ----------------------------------------------
+
+    /**
+     * Matches builds that match both this and the given query.
+     */
+    public BuildQuery and(BuildQuery other) {
+        return new BuildQuery(index -> {
+            BitSet result = evaluate(index);
+
+            // Skip the other side entirely if there's nothing left to match
+            if (!result.isEmpty()) {
+                result.and(other.evaluate(index));
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Matches builds that match either this or the given query.
+     */
+    public BuildQuery or(BuildQuery other) {
+        return new BuildQuery(index -> {
+            BitSet result = evaluate(index);
+            result.or(other.evaluate(index));
+            return result;
+        });
+    }
+
+    /**
+     * Matches builds that match this query but not the given one.
+     */
+    public BuildQuery andNot(BuildQuery other) {
+        return new BuildQuery(index -> {
+            BitSet result = evaluate(index);
+
+            if (!result.isEmpty()) {
+                result.andNot(other.evaluate(index));
+            }
+
+            return result;
+        });
+    }
+
+    // ----------------------------------------------
+    //
+    // Package-private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns the ordinals of the matching builds. The returned set is owned
+     * by the caller and may be modified.
+     */
+    BitSet evaluate(ItemIndex index) {
+        return lookup.apply(index);
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner interface
+    //
+    // ----------------------------------------------
+
+    /**
+     * Looks up a posting list in the index.
+     */
+    @FunctionalInterface
+    private interface Lookup {
+        BitSet apply(ItemIndex index);
+    }
+
+}
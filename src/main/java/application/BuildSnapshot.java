@@ -0,0 +1,200 @@
+package application;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import application.model.BuildInfo;
+import application.model.D3Class;
+
+/**
+ * An immutable view of all stored builds, along with their {@link ItemIndex}
+ * and the statistics shown in the status bar.
+ * 
+ * <p>
+ * Changes never touch a snapshot, they create a new one, see
+ * {@link #withBuilds(Collection, Collection)}. {@link BuildDataManager}
+ * publishes the current snapshot through an atomic reference, so readers
+ * never lock and never see a set that's half way through an update. A
+ * snapshot can also be put together entirely off to the side, like the one
+ * {@link BuildDataManager#replaceBuilds(Set, long)} makes at the end of an update.
+ * </p>
+ */
+final class BuildSnapshot {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final BuildSnapshot EMPTY = new BuildSnapshot(Collections.emptySet(),
+            ItemIndex.empty(), null, new int[D3Class.values().length],
+            Collections.emptySet());
+
+    private final Set<BuildInfo> builds;
+    private final ItemIndex itemIndex;
+    private final LocalDate lastUpdated;
+
+    private final int[] classCounts;
+    private final Set<BuildInfo> favoriteBuilds;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private BuildSnapshot(Set<BuildInfo> builds, ItemIndex itemIndex,
+            LocalDate lastUpdated, int[] classCounts, Set<BuildInfo> favoriteBuilds) {
+
+        this.builds = builds;
+        this.itemIndex = itemIndex;
+        this.lastUpdated = lastUpdated;
+        this.classCounts = classCounts;
+        this.favoriteBuilds = favoriteBuilds;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns a snapshot without any builds.
+     */
+    public static BuildSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a snapshot of the given builds and indexes them.
+     */
+    public static BuildSnapshot create(Collection<BuildInfo> builds,
+            LocalDate lastUpdated) {
+
+        return create(builds, ItemIndex.build(builds), lastUpdated);
+    }
+
+    /**
+     * Creates a snapshot of the given builds, which are already indexed by the
+     * given index.
+     */
+    public static BuildSnapshot create(Collection<BuildInfo> builds,
+            ItemIndex itemIndex, LocalDate lastUpdated) {
+
+        int[] classCounts = new int[D3Class.values().length];
+        Set<BuildInfo> favoriteBuilds = new HashSet<>();
+
+        for (BuildInfo buildInfo : builds) {
+            classCounts[buildInfo.getD3Class().ordinal()]++;
+
+            if (buildInfo.isFavorite()) {
+                favoriteBuilds.add(buildInfo);
+            }
+        }
+
+        return new BuildSnapshot(Collections.unmodifiableSet(new HashSet<>(builds)),
+                itemIndex, lastUpdated, classCounts,
+                Collections.unmodifiableSet(favoriteBuilds));
+    }
+
+    /**
+     * Returns a new snapshot with the given builds removed and added. An
+     * added build that's already stored replaces the stored one.
+     */
+    public BuildSnapshot withBuilds(Collection<BuildInfo> addedBuilds,
+            Collection<BuildInfo> removedBuilds) {
+
+        Set<BuildInfo> newBuilds = new HashSet<>(builds);
+        int[] newClassCounts = Arrays.copyOf(classCounts, classCounts.length);
+        Set<BuildInfo> newFavoriteBuilds = new HashSet<>(favoriteBuilds);
+
+        for (BuildInfo buildInfo : removedBuilds) {
+            if (newBuilds.remove(buildInfo)) {
+                newClassCounts[buildInfo.getD3Class().ordinal()]--;
+                newFavoriteBuilds.remove(buildInfo);
+            }
+        }
+
+        for (BuildInfo buildInfo : addedBuilds) {
+            // Set.add keeps the old instance, make sure the new one is stored
+            if (newBuilds.remove(buildInfo)) {
+                newFavoriteBuilds.remove(buildInfo);
+            } else {
+                newClassCounts[buildInfo.getD3Class().ordinal()]++;
+            }
+
+            newBuilds.add(buildInfo);
+
+            if (buildInfo.isFavorite()) {
+                newFavoriteBuilds.add(buildInfo);
+            }
+        }
+
+        return new BuildSnapshot(Collections.unmodifiableSet(newBuilds),
+                itemIndex.withChanges(addedBuilds, removedBuilds), lastUpdated,
+                newClassCounts, Collections.unmodifiableSet(newFavoriteBuilds));
+    }
+
+    /**
+     * Returns a new snapshot where the given build is or isn't a favorite. The
+     * flag on the build itself is left to the caller.
+     */
+    public BuildSnapshot withFavorite(BuildInfo buildInfo, boolean isFavorite) {
+        Set<BuildInfo> newFavoriteBuilds = new HashSet<>(favoriteBuilds);
+        newFavoriteBuilds.remove(buildInfo);
+
+        if (isFavorite && builds.contains(buildInfo)) {
+            newFavoriteBuilds.add(buildInfo);
+        }
+
+        return new BuildSnapshot(builds, itemIndex, lastUpdated, classCounts,
+                Collections.unmodifiableSet(newFavoriteBuilds));
+    }
+
+    /**
+     * Returns a new snapshot with the given last updated date.
+     */
+    public BuildSnapshot withLastUpdated(LocalDate lastUpdated) {
+        return new BuildSnapshot(builds, itemIndex, lastUpdated, classCounts,
+                favoriteBuilds);
+    }
+
+    // ----------------------------------------------
+    //
+    // Getters & Setters
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns all builds, the set can't be modified.
+     */
+    public Set<BuildInfo> getBuilds() {
+        return builds;
+    }
+
+    public ItemIndex getItemIndex() {
+        return itemIndex;
+    }
+
+    public LocalDate getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public int getClassCount(D3Class d3Class) {
+        return classCounts[d3Class.ordinal()];
+    }
+
+    /**
+     * Returns all favorite builds, the set can't be modified.
+     */
+    public Set<BuildInfo> getFavoriteBuilds() {
+        return favoriteBuilds;
+    }
+
+}
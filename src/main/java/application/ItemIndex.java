@@ -0,0 +1,483 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+import application.model.ItemDictionary;
+
+/**
+ * Inverted index from item names to the builds using them. Also keeps
+ * posting lists per class, patch and score, so {@link BuildQuery}s can be
+ * answered with set operations alone.
+ * 
+ * <p>
+ * Every indexed build gets an ordinal, and every item maps to posting lists
+ * of the ordinals of the builds it appears in, stored as {@link BitSet}s. An
+ * item has one posting list per {@link GearSlot} it's found in, one for all
+ * cube slots and one for anywhere, so asking whether an item is cubed or worn
+ * in a certain slot is a bitmap lookup. Items are looked up by their
+ * {@link ItemDictionary} id, so names are matched case insensitively.
+ * </p>
+ * 
+ * <p>
+ * An index never changes once it's built, so it can be read from any thread
+ * without locking. {@link #withChanges(Collection, Collection)} returns a new
+ * index that shares every posting list the changes don't touch. Removed
+ * builds are only dropped from the set of live builds, which every result is
+ * masked with, until the next full build.
+ * </p>
+ */
+final class ItemIndex {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final BitSet NO_BUILDS = new BitSet();
+
+    private final List<BuildInfo> builds;
+    private final Map<BuildInfo, Integer> ordinals;
+
+    /**
+     * The postings of each item, by {@link ItemDictionary} id.
+     */
+    private final List<ItemPostings> postings;
+
+    private final BitSet liveBuilds;
+    private final Map<D3Class, BitSet> classPostings;
+    private final Map<String, BitSet> patchPostings;
+
+    /**
+     * The builds with each score, sorted by score so a range of scores is a
+     * union of the posting lists in it.
+     */
+    private final TreeMap<Integer, BitSet> scorePostings;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private ItemIndex() {
+        this(new ArrayList<>(), new HashMap<>(), new ArrayList<>(), new BitSet(),
+                new EnumMap<>(D3Class.class), new HashMap<>(), new TreeMap<>());
+    }
+
+    private ItemIndex(List<BuildInfo> builds, Map<BuildInfo, Integer> ordinals,
+            List<ItemPostings> postings, BitSet liveBuilds,
+            Map<D3Class, BitSet> classPostings, Map<String, BitSet> patchPostings,
+            TreeMap<Integer, BitSet> scorePostings) {
+
+        this.builds = builds;
+        this.ordinals = ordinals;
+        this.postings = postings;
+        this.liveBuilds = liveBuilds;
+        this.classPostings = classPostings;
+        this.patchPostings = patchPostings;
+        this.scorePostings = scorePostings;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns an index without any builds.
+     */
+    public static ItemIndex empty() {
+        return new ItemIndex();
+    }
+
+    /**
+     * Indexes the given builds.
+     */
+    public static ItemIndex build(Collection<BuildInfo> buildInfos) {
+        ItemIndex index = new ItemIndex();
+        buildInfos.forEach(buildInfo -> index.add(buildInfo, null));
+
+        return index;
+    }
+
+    /**
+     * Indexes the builds of the given file. The gear is read straight from the
+     * file, so the builds themselves don't have to be loaded.
+     */
+    public static ItemIndex build(BuildDataFile.Contents contents) {
+        ItemIndex index = new ItemIndex();
+
+        for (int row = 0; row < contents.size(); row++) {
+            int[][] itemIds = contents.getItemIds(row);
+            index.add(contents.getBuild(row), gearSlot -> itemIds[gearSlot.ordinal()],
+                    null);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns a copy of this index with the given builds removed and added.
+     * An added build that's already indexed is replaced. This index is left
+     * as it is, and is returned as is if there are no changes.
+     */
+    public ItemIndex withChanges(Collection<BuildInfo> addedBuilds,
+            Collection<BuildInfo> removedBuilds) {
+
+        if (addedBuilds.isEmpty() && removedBuilds.isEmpty()) {
+            return this;
+        }
+
+        ItemIndex index = new ItemIndex(new ArrayList<>(builds), new HashMap<>(ordinals),
+                new ArrayList<>(postings), (BitSet) liveBuilds.clone(),
+                new EnumMap<>(classPostings), new HashMap<>(patchPostings),
+                new TreeMap<>(scorePostings));
+
+        // The posting lists copied for the new index, everything else is
+        // shared with this one and must not be touched
+        Set<Object> ownedPostings = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        removedBuilds.forEach(index::remove);
+        addedBuilds.forEach(buildInfo -> index.add(buildInfo, ownedPostings));
+
+        return index;
+    }
+
+    /**
+     * Returns the number of builds in the index.
+     */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /**
+     * Returns the indexed build that's equal to the given one, or null if it
+     * isn't indexed.
+     */
+    public BuildInfo getBuild(BuildInfo buildInfo) {
+        Integer ordinal = ordinals.get(buildInfo);
+        return (ordinal == null) ? null : builds.get(ordinal);
+    }
+
+    /**
+     * Returns the builds that use the given item, either worn or cubed.
+     */
+    public Set<BuildInfo> getBuildsWithItem(String item) {
+        ItemPostings itemPostings = getItemPostings(item);
+        return toBuilds(itemPostings == null ? NO_BUILDS : itemPostings.anywhere);
+    }
+
+    /**
+     * Returns the builds that have the given item in the given slot.
+     */
+    public Set<BuildInfo> getBuildsWithItem(String item,
+            GearSlot gearSlot) {
+
+        return toBuilds(getPosting(item, gearSlot));
+    }
+
+    /**
+     * Returns the builds that have the given item in any of the cube slots.
+     */
+    public Set<BuildInfo> getBuildsWithCubedItem(String item) {
+        ItemPostings itemPostings = getItemPostings(item);
+        return toBuilds(itemPostings == null ? NO_BUILDS : itemPostings.cubed);
+    }
+
+    /**
+     * Checks if the given build has the given item in any of the cube slots.
+     */
+    public boolean isCubed(BuildInfo buildInfo, String item) {
+        ItemPostings itemPostings = getItemPostings(item);
+        Integer ordinal = ordinals.get(buildInfo);
+
+        return itemPostings != null && ordinal != null
+                && itemPostings.cubed.get(ordinal);
+    }
+
+    /**
+     * Checks if the given build has the given item in the given slot.
+     */
+    public boolean hasItem(BuildInfo buildInfo, String item,
+            GearSlot gearSlot) {
+
+        Integer ordinal = ordinals.get(buildInfo);
+        return ordinal != null && getPosting(item, gearSlot).get(ordinal);
+    }
+
+    /**
+     * Returns the builds matching the given query.
+     */
+    public Set<BuildInfo> query(BuildQuery buildQuery) {
+        return toBuilds(buildQuery.evaluate(this));
+    }
+
+    // ----------------------------------------------
+    //
+    // Package-private API
+    //
+    // ----------------------------------------------
+
+    // These hand out copies masked to the live builds, queries combine them
+    // in place
+
+    BitSet getAllBuilds() {
+        return (BitSet) liveBuilds.clone();
+    }
+
+    BitSet getItemPosting(String item) {
+        ItemPostings itemPostings = getItemPostings(item);
+        return live(itemPostings == null ? NO_BUILDS : itemPostings.anywhere);
+    }
+
+    BitSet getItemPosting(String item, GearSlot gearSlot) {
+        return live(getPosting(item, gearSlot));
+    }
+
+    BitSet getCubedPosting(String item) {
+        ItemPostings itemPostings = getItemPostings(item);
+        return live(itemPostings == null ? NO_BUILDS : itemPostings.cubed);
+    }
+
+    BitSet getClassPosting(D3Class d3Class) {
+        return live(classPostings.getOrDefault(d3Class, NO_BUILDS));
+    }
+
+    BitSet getPatchPosting(String patch) {
+        return live(patchPostings.getOrDefault(normalize(patch), NO_BUILDS));
+    }
+
+    BitSet getScorePosting(int minScore, int maxScore) {
+        BitSet posting = new BitSet();
+
+        if (minScore > maxScore) {
+            return posting;
+        }
+
+        scorePostings.subMap(minScore, true, maxScore, true).values()
+                .forEach(posting::or);
+        posting.and(liveBuilds);
+
+        return posting;
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Adds a build to the index, replacing it if it's already indexed.
+     * 
+     * @param ownedPostings
+     *            The posting lists this index may change, any other one is
+     *            copied first. Null if the index owns all of them.
+     */
+    private void add(BuildInfo buildInfo, Set<Object> ownedPostings) {
+        BuildGear buildGear = buildInfo.getBuildGear();
+
+        if (buildGear == null) {
+            add(buildInfo, gearSlot -> new int[0], ownedPostings);
+        } else {
+            add(buildInfo, buildGear::getItemIds, ownedPostings);
+        }
+    }
+
+    /**
+     * Adds a build to the index, reading its items from the given function.
+     */
+    private void add(BuildInfo buildInfo, Function<GearSlot, int[]> itemIds,
+            Set<Object> ownedPostings) {
+
+        remove(buildInfo);
+
+        int ordinal = builds.size();
+        builds.add(buildInfo);
+        ordinals.put(buildInfo, ordinal);
+
+        liveBuilds.set(ordinal);
+
+        classPostings.compute(buildInfo.getD3Class(),
+                (key, posting) -> own(posting, ownedPostings)).set(ordinal);
+        patchPostings.compute(normalize(buildInfo.getPatch()),
+                (key, posting) -> own(posting, ownedPostings)).set(ordinal);
+        scorePostings.compute(buildInfo.getBuildScore(),
+                (key, posting) -> own(posting, ownedPostings)).set(ordinal);
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            for (int itemId : itemIds.apply(gearSlot)) {
+                while (postings.size() <= itemId) {
+                    postings.add(null);
+                }
+
+                ItemPostings itemPostings = postings.get(itemId);
+
+                if (itemPostings == null) {
+                    itemPostings = new ItemPostings();
+                } else if (ownedPostings != null && !ownedPostings.contains(itemPostings)) {
+                    itemPostings = new ItemPostings(itemPostings);
+                }
+
+                if (ownedPostings != null) {
+                    ownedPostings.add(itemPostings);
+                }
+
+                postings.set(itemId, itemPostings);
+                itemPostings.add(ordinal, gearSlot);
+            }
+        }
+    }
+
+    /**
+     * Drops a build from the live builds, if it's indexed. Its ordinal is left
+     * in the posting lists, which are shared with older indexes.
+     */
+    private void remove(BuildInfo buildInfo) {
+        Integer ordinal = ordinals.remove(buildInfo);
+
+        if (ordinal == null) {
+            return;
+        }
+
+        builds.set(ordinal, null);
+        liveBuilds.clear(ordinal);
+    }
+
+    /**
+     * Returns a posting list this index may change. A missing one is created,
+     * a shared one is copied.
+     */
+    private static BitSet own(BitSet posting, Set<Object> ownedPostings) {
+        if (posting == null) {
+            posting = new BitSet();
+        } else if (ownedPostings != null && !ownedPostings.contains(posting)) {
+            posting = (BitSet) posting.clone();
+        } else {
+            return posting;
+        }
+
+        if (ownedPostings != null) {
+            ownedPostings.add(posting);
+        }
+
+        return posting;
+    }
+
+    /**
+     * Returns a copy of the given posting list with only the live builds.
+     */
+    private BitSet live(BitSet posting) {
+        BitSet livePosting = (BitSet) posting.clone();
+        livePosting.and(liveBuilds);
+
+        return livePosting;
+    }
+
+    /**
+     * Returns the postings of the given item, or null if no build uses it.
+     */
+    private ItemPostings getItemPostings(String item) {
+        int itemId = ItemDictionary.getId(item);
+
+        if (itemId == ItemDictionary.NO_ITEM || itemId >= postings.size()) {
+            return null;
+        }
+
+        return postings.get(itemId);
+    }
+
+    private BitSet getPosting(String item, GearSlot gearSlot) {
+        ItemPostings itemPostings = getItemPostings(item);
+
+        if (itemPostings == null || itemPostings.bySlot[gearSlot.ordinal()] == null) {
+            return NO_BUILDS;
+        }
+
+        return itemPostings.bySlot[gearSlot.ordinal()];
+    }
+
+    private Set<BuildInfo> toBuilds(BitSet posting) {
+        Set<BuildInfo> matchingBuilds = new HashSet<>(posting.cardinality() * 4 / 3 + 1);
+
+        for (int i = posting.nextSetBit(0); i >= 0; i = posting.nextSetBit(i + 1)) {
+            if (liveBuilds.get(i)) {
+                matchingBuilds.add(builds.get(i));
+            }
+        }
+
+        return matchingBuilds;
+    }
+
+    private static String normalize(String value) {
+        return (value == null) ? "" : value.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes
+    //
+    // ----------------------------------------------
+
+    /**
+     * The posting lists of a single item.
+     */
+    private static class ItemPostings {
+
+        private final BitSet anywhere = new BitSet();
+        private final BitSet cubed = new BitSet();
+        private final BitSet[] bySlot = new BitSet[GearSlot.values().length];
+
+        public ItemPostings() {
+        }
+
+        /**
+         * Creates a copy of the given postings.
+         */
+        public ItemPostings(ItemPostings itemPostings) {
+            anywhere.or(itemPostings.anywhere);
+            cubed.or(itemPostings.cubed);
+
+            for (int i = 0; i < bySlot.length; i++) {
+                if (itemPostings.bySlot[i] != null) {
+                    bySlot[i] = (BitSet) itemPostings.bySlot[i].clone();
+                }
+            }
+        }
+
+        public void add(int ordinal, GearSlot gearSlot) {
+            anywhere.set(ordinal);
+
+            if (gearSlot.isCubeSlot()) {
+                cubed.set(ordinal);
+            }
+
+            if (bySlot[gearSlot.ordinal()] == null) {
+                bySlot[gearSlot.ordinal()] = new BitSet();
+            }
+
+            bySlot[gearSlot.ordinal()].set(ordinal);
+        }
+
+    }
+
+}
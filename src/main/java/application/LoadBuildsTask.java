@@ -0,0 +1,21 @@
+package application;
+
+import javafx.concurrent.Task;
+
+/**
+ * Loads the stored builds and builds the item index in the background, so
+ * the main window can be shown right away. Returns the status text describing
+ * the loaded builds, see {@link BuildDataManager#getDataInfo()}.
+ */
+public class LoadBuildsTask extends Task<String> {
+
+    @Override
+    protected String call() throws Exception {
+        updateMessage("Loading builds...");
+
+        BuildDataManager.loadBuilds();
+
+        return BuildDataManager.getDataInfo();
+    }
+
+}
@@ -1,29 +1,34 @@
 package application;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import application.config.UserPreferences;
 import application.config.UserPreferences.PrefKey;
-import application.model.BuildGear;
+import application.model.BuildDetails;
 import application.model.BuildInfo;
 import application.model.D3Class;
-import application.util.BuildUrlParser;
+import application.util.FetchPlanner;
 import javafx.concurrent.Task;
 import javafx.util.Pair;
 
@@ -32,7 +37,7 @@ import javafx.util.Pair;
  */
 public final class Scraper extends Task<Boolean> {
 
-    private static final int THREAD_COUNT = 7;
+    private static final int DEFAULT_CONCURRENCY = 7;
 
     // ----------------------------------------------
     //
@@ -41,17 +46,57 @@ public final class Scraper extends Task<Boolean> {
     // ----------------------------------------------
 
     private Set<BuildInfo> buildInfoSet;
+    private final boolean quickRefresh;
+    private final boolean stopAtUpToDatePages;
 
-    private final static String BASELINE_URL = "http://www.diablofans.com";
+    /**
+     * The most pages of a listing we fetch when we can't stop at the first
+     * page without anything new, see {@link #fetchListingPages(List)}.
+     */
     private final static int MAX_PAGE_COUNT = 3;
 
-    private final List<FetchInfo> FETCH_INFO;
+    private final static String BASELINE_URL = "http://www.diablofans.com";
+
+    /**
+     * Downloaded builds are handed to {@link BuildDataManager} once this many
+     * have finished, or once this much time has passed since the last batch.
+     */
+    private final static int PUBLISH_BATCH_SIZE = 200;
+    private final static long PUBLISH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Where the progress of an unfinished update is kept, see
+     * {@link UpdateCheckpoint}.
+     */
+    private final static File CHECKPOINT_FILE = new File("./data/", "update.checkpoint");
+
+    private final List<FetchPlanner.Listing> FETCH_PLAN;
+
+    /**
+     * The {@link BuildDataManager#getChangeCount()} of the builds this update
+     * started out from.
+     */
+    private final long changeCount;
 
     private Set<BuildInfo> newBuildInfoSet;
-    private BuildDownloader buildDownloader;
+    private Map<BuildInfo, BuildInfo> storedBuildIndex;
+    private volatile BuildDownloader buildDownloader;
+    private final UpdateCheckpoint checkpoint = new UpdateCheckpoint(CHECKPOINT_FILE);
 
     private boolean downloadedAllBuilds = true;
 
+    /**
+     * Listings where we stopped walking the pages before the last one, see
+     * {@link #fetchListingPages(List)}.
+     */
+    private final Set<FetchPlanner.Listing> partlyWalkedListings = new HashSet<>();
+
+    /**
+     * Listings with a page that isn't sorted by last update, so we can't tell
+     * from a page how new the pages below it are.
+     */
+    private final Set<FetchPlanner.Listing> unsortedListings = new HashSet<>();
+
     // ----------------------------------------------
     //
     // Constructor
@@ -62,11 +107,36 @@ public final class Scraper extends Task<Boolean> {
      * Creates a new instance around the given {@link BuildInfo} set.
      * 
      * @param buildInfoSet
-     *            The set of {@link BuildInfo}s to fill with scraped data.
+     *            The builds stored so far, any of them that are still up to
+     *            date are reused instead of downloaded again. The result
+     *            replaces them through {@link BuildDataManager}.
      */
     public Scraper(Set<BuildInfo> buildInfoSet) {
+        this(buildInfoSet, false);
+    }
+
+    /**
+     * Creates a new instance around the given {@link BuildInfo} set.
+     * 
+     * @param buildInfoSet
+     *            The builds stored so far, see {@link #Scraper(Set)}.
+     * @param quickRefresh
+     *            If true, the scores from the listing pages are stored as soon
+     *            as the listing pages are in, before any build is downloaded.
+     *            New and changed builds are then downloaded and stored as they
+     *            come in, and favorites that are no longer listed are left as
+     *            they are.
+     */
+    public Scraper(Set<BuildInfo> buildInfoSet, boolean quickRefresh) {
         this.buildInfoSet = buildInfoSet;
-        FETCH_INFO = buildFetchInfo();
+        this.quickRefresh = quickRefresh;
+        this.stopAtUpToDatePages = UserPreferences
+                .getBooleanOrDefault(PrefKey.STOP_AT_UP_TO_DATE_PAGES, false);
+
+        // Favorites and deletions are only made on the FX thread, same as
+        // the builds are handed over
+        this.changeCount = BuildDataManager.getChangeCount();
+        FETCH_PLAN = buildFetchPlan();
     }
 
     // ----------------------------------------------
@@ -84,6 +154,16 @@ public final class Scraper extends Task<Boolean> {
         return super.cancel(mayInterruptIfRunning);
     }
 
+    /**
+     * Returns the amount of requests this update ended up keeping in flight,
+     * or 0 if it never got to download anything. Start the next update from
+     * this, see {@link PrefKey#DOWNLOAD_CONCURRENCY}.
+     */
+    public int getConcurrency() {
+        BuildDownloader downloader = buildDownloader;
+        return (downloader == null) ? 0 : downloader.getConcurrency();
+    }
+
     // ----------------------------------------------
     //
     // Protected API
@@ -93,14 +173,45 @@ public final class Scraper extends Task<Boolean> {
     @Override
     protected Boolean call() throws Exception {
         newBuildInfoSet = new HashSet<>();
+        storedBuildIndex = indexBuilds(buildInfoSet);
 
-        for (FetchInfo fetchInfo : FETCH_INFO) {
-            Set<BuildInfo> newBuilds = fetchNewBuilds(fetchInfo);
-            newBuildInfoSet.addAll(newBuilds);
-        }
+        // One downloader serves the whole update, listing pages, builds and
+        // lost favorites alike
+        buildDownloader = new BuildDownloader(UserPreferences
+                .getIntegerOrDefault(PrefKey.DOWNLOAD_CONCURRENCY, DEFAULT_CONCURRENCY));
+
+        try {
+
+            List<ListingPage> listingPages = buildListingPages();
+            openCheckpoint(listingPages);
 
-        if (!isCancelled()) {
-            updateStoredBuildInfo(newBuildInfoSet);
+            Set<BuildInfo> buildsToDownload = fetchListingPages(listingPages);
+
+            if (quickRefresh && !isCancelled()) {
+                storeListedBuilds(buildsToDownload);
+                showStatusBarMessage("Scores updated!", 500);
+            }
+
+            if (!isCancelled()) {
+                newBuildInfoSet.addAll(downloadBuilds(buildsToDownload));
+            }
+
+            if (!isCancelled()) {
+                if (!quickRefresh) {
+                    newBuildInfoSet.addAll(extractUnwalkedBuilds());
+                    updateStoredBuildInfo(newBuildInfoSet, true);
+                }
+
+                updateProgress(1, 1);
+                showStatusBarMessage("Done!", 500);
+
+                // Nothing left to resume
+                checkpoint.delete();
+            }
+
+        } finally {
+            buildDownloader.shutdown();
+            checkpoint.close();
         }
 
         return downloadedAllBuilds;
@@ -113,179 +224,384 @@ public final class Scraper extends Task<Boolean> {
     // ----------------------------------------------
 
     /**
-     * Fetches new builds based on the given {@link FetchInfo}.
+     * Expands every {@link FetchPlanner.Listing} into the listing pages we
+     * need to fetch, one entry per class and page. Unless we stop at pages
+     * without anything new, no more than {@link #MAX_PAGE_COUNT} pages of a
+     * listing are fetched.
      */
-    private Set<BuildInfo> fetchNewBuilds(FetchInfo fetchInfo) {
-        Set<BuildInfo> builds = new HashSet<>();
+    private List<ListingPage> buildListingPages() {
+        List<ListingPage> listingPages = new ArrayList<>();
 
-        for (D3Class thisClass : D3Class.values()) {
-            if (isCancelled()) {
-                break;
-            }
+        for (FetchPlanner.Listing listing : FETCH_PLAN) {
+            ListingPage previousPage = null;
 
-            int id = thisClass.getClassFilterId();
-            if (!fetchInfo.classesToFetch.contains(id)) {
-                continue;
+            int pageCount = stopAtUpToDatePages ? listing.getPageCount()
+                    : Math.min(listing.getPageCount(), MAX_PAGE_COUNT);
+
+            for (int page = 1; page <= pageCount; page++) {
+                ListingPage listingPage = new ListingPage(listing.getPageUrl(page),
+                        listing, page);
+
+                if (previousPage != null) {
+                    previousPage.nextPage = listingPage;
+                    listingPage.firstPage = false;
+                }
+
+                listingPages.add(listingPage);
+                previousPage = listingPage;
             }
+        }
 
-            updateProgress(0, 1);
-            String thisFetchUrl = fetchInfo.fetchUrl;
-            thisFetchUrl += "&filter-class=" + id;
+        return listingPages;
+    }
 
-            int pageCount = fetchInfo.pageCount;
+    /**
+     * Opens the {@link UpdateCheckpoint} for the given listing pages. Pages an
+     * earlier update already fetched are marked as such, and the builds it
+     * already downloaded are treated like stored ones, so only the builds
+     * that are still missing get downloaded.
+     */
+    private void openCheckpoint(List<ListingPage> listingPages) {
+        List<String> pageUrls = new ArrayList<>();
+        for (ListingPage listingPage : listingPages) {
+            pageUrls.add(listingPage.url);
+        }
 
-            if (pageCount == 1) {
+        try {
+            checkpoint.open(pageUrls);
+        } catch (IOException e) {
+            // Not worth failing the update over, it just can't be resumed
+            e.printStackTrace();
+            return;
+        }
 
-                updateMessage(String.format("Fetching %s builds", thisClass.toString()));
-                builds.addAll(getBuilds(thisFetchUrl));
+        Map<String, Set<BuildInfo>> completedPages = checkpoint.getCompletedPages();
 
-            } else {
+        for (ListingPage listingPage : listingPages) {
+            listingPage.checkpointedBuilds = completedPages.get(listingPage.url);
+        }
+
+        storedBuildIndex.putAll(indexBuilds(checkpoint.getCompletedBuilds()));
+    }
+
+    /**
+     * Fetches all the given listing pages concurrently and extracts the builds
+     * listed on them. Any build that is already up to date goes straight into
+     * {@link #newBuildInfoSet}, the rest are returned for the download stage.
+     * Pages a checkpointed update already fetched aren't fetched again.
+     * 
+     * <p>
+     * If turned on through {@link PrefKey#STOP_AT_UP_TO_DATE_PAGES}, the pages
+     * of a listing are walked one after the other, and we stop walking as
+     * soon as every build on a page is stored and up to date. The builds on
+     * the pages we skipped are kept as they are, see
+     * {@link #extractUnwalkedBuilds()}. That only holds for a listing sorted
+     * by last update, so a listing with a page that isn't sorted that way is
+     * walked like any other, up to {@link #MAX_PAGE_COUNT} pages.
+     * </p>
+     */
+    private Set<BuildInfo> fetchListingPages(List<ListingPage> listingPages) {
+        Set<BuildInfo> buildsToDownload = new HashSet<>();
+
+        if (Thread.interrupted() || listingPages.isEmpty()) {
+            return buildsToDownload;
+        }
+
+        BlockingQueue<ListingPage> finishedPages = new LinkedBlockingQueue<>();
+        int pendingPages = 0;
+
+        for (ListingPage listingPage : listingPages) {
+            if (listingPage.firstPage || !stopAtUpToDatePages) {
+                queueListingPage(listingPage, finishedPages);
+                pendingPages++;
+            }
+        }
+
+        int totalWork = listingPages.size();
+        int workDone = 0;
+        updateProgress(0, totalWork);
 
-                thisFetchUrl += "&page=";
+        try {
 
-                for (int i = 0; i < pageCount; i++) {
+            while (pendingPages > 0) {
+                if (isCancelled()) {
+                    break;
+                }
 
-                    int currentPage = i + 1;
+                updateMessage(String.format("Fetching listing page %d of %d",
+                        workDone + 1, totalWork));
 
-                    updateProgress(0, 1);
-                    updateMessage(String.format("Fetching %s builds, page %d of %d",
-                            thisClass.toString(), currentPage, pageCount));
+                ListingPage listingPage = finishedPages.take();
+                pendingPages--;
 
-                    builds.addAll(getBuilds(thisFetchUrl + currentPage));
+                // Pages are merged here on the scraper thread, in whatever
+                // order they finish, so the sets below are never shared
+                Set<BuildInfo> listedBuilds;
 
+                if (listingPage.checkpointedBuilds != null) {
+                    listedBuilds = new HashSet<>(listingPage.checkpointedBuilds);
+                } else {
+                    listedBuilds = extractBuildInfo(listingPage);
+                    checkpoint.addPage(listingPage.url, listedBuilds);
+                }
+
+                if (!listingPage.sortedByUpdate) {
+                    unsortedListings.add(listingPage.listing);
                 }
 
+                // Only what's stored or checkpointed counts as up to date.
+                // Builds another listing already queued during this update
+                // are still new, whichever page happened to finish first.
+                Set<BuildInfo> upToDateBuilds = extractUpToDateBuilds(listedBuilds);
+                newBuildInfoSet.addAll(upToDateBuilds);
+
+                // Rows left out for their score count as new, we can't tell
+                boolean nothingNew = listingPage.rowCount > 0
+                        && upToDateBuilds.size() == listingPage.rowCount
+                        && !unsortedListings.contains(listingPage.listing);
+
+                buildsToDownload.addAll(listedBuilds);
+
+                workDone++;
+
+                if (stopAtUpToDatePages && listingPage.nextPage != null) {
+                    if (listingPage.rowCount == 0) {
+                        // The listing ends here, there's nothing below
+                        totalWork -= listingPage.countFollowingPages();
+                    } else if (nothingNew) {
+                        // Nothing new here, the pages below are left alone
+                        totalWork -= listingPage.countFollowingPages();
+                        partlyWalkedListings.add(listingPage.listing);
+                    } else if (unsortedListings.contains(listingPage.listing)
+                            && listingPage.pageNumber >= MAX_PAGE_COUNT) {
+                        // Walked as far as a listing we can't stop early
+                        totalWork -= listingPage.countFollowingPages();
+                    } else {
+                        queueListingPage(listingPage.nextPage, finishedPages);
+                        pendingPages++;
+                    }
+                }
+
+                updateProgress(workDone, totalWork);
             }
+
+        } catch (InterruptedException | CancellationException e) {
+            // We were cancelled while waiting on a page
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not fetch the document",
+                    BuildDownloader.unwrap(e.getCause()));
         }
 
-        return builds;
+        return buildsToDownload;
     }
 
     /**
-     * Parses the {@link UserPreferences} and extracts fetch information.
+     * Queues the given listing page on the {@link BuildDownloader}, the page is
+     * added to the given queue once it's done. A page a checkpointed update
+     * already fetched is done right away.
      */
-    private List<FetchInfo> buildFetchInfo() {
-        List<FetchInfo> returnList = new ArrayList<>();
-
-        BuildUrlParser buildUrlParser = new BuildUrlParser(
-                UserPreferences.get(PrefKey.BUILDS_URL));
+    private void queueListingPage(ListingPage listingPage,
+            BlockingQueue<ListingPage> finishedPages) {
 
-        Set<Integer> classesToFetch = buildUrlParser.extractClassesToFetch();
-
-        int pageCount = UserPreferences.getInteger(PrefKey.PAGE_COUNT);
-        // Limit the amount of pages we download
-        if (pageCount > MAX_PAGE_COUNT) {
-            UserPreferences.set(PrefKey.PAGE_COUNT, MAX_PAGE_COUNT);
-            pageCount = MAX_PAGE_COUNT;
+        if (listingPage.checkpointedBuilds != null) {
+            finishedPages.add(listingPage);
+            return;
         }
 
-        FetchInfo defaultFetchInfo = new FetchInfo(
-                buildUrlParser.getFetchUrlWithoutClasses(), pageCount, classesToFetch);
-
-        returnList.add(defaultFetchInfo);
-
-        // Now let's process additional URLs
+        listingPage.document = buildDownloader.queueListing(listingPage.url);
+        listingPage.document
+                .whenComplete((document, throwable) -> finishedPages.add(listingPage));
+    }
 
-        List<String> additionalFetchUrls = UserPreferences
-                .getList(PrefKey.ADDITIONAL_BUILD_URLS);
-        List<String> additionalPageCounts = UserPreferences
-                .getList(PrefKey.ADDITIONAL_PAGE_COUNTS);
+    /**
+     * Returns the stored builds of every class where we stopped walking each
+     * of its listings early, that weren't listed on any of the pages we did
+     * walk. They're most likely still on the pages we skipped, so they're
+     * kept instead of dropped. A class that has a listing we walked to the
+     * end keeps nothing extra.
+     */
+    private Set<BuildInfo> extractUnwalkedBuilds() {
+        Set<BuildInfo> unwalkedBuilds = new HashSet<>();
 
-        if (additionalFetchUrls.isEmpty() || additionalPageCounts.isEmpty()) {
-            return returnList;
+        if (partlyWalkedListings.isEmpty()) {
+            return unwalkedBuilds;
         }
 
-        for (int i = 0; i < additionalFetchUrls.size(); i++) {
-            String additionalfetchUrl = additionalFetchUrls.get(i);
-            buildUrlParser = new BuildUrlParser(additionalfetchUrl);
-
-            int additionalPageCount = Integer.parseInt(additionalPageCounts.get(i));
+        Set<D3Class> partlyWalkedClasses = EnumSet.noneOf(D3Class.class);
+        Set<D3Class> fullyWalkedClasses = EnumSet.noneOf(D3Class.class);
 
-            Set<Integer> additonalClassesToFetch = buildUrlParser.extractClassesToFetch();
+        for (FetchPlanner.Listing listing : FETCH_PLAN) {
+            if (partlyWalkedListings.contains(listing)) {
+                partlyWalkedClasses.add(listing.getD3Class());
+            } else {
+                fullyWalkedClasses.add(listing.getD3Class());
+            }
+        }
 
-            FetchInfo additionalFetchInfo = new FetchInfo(
-                    buildUrlParser.getFetchUrlWithoutClasses(), additionalPageCount,
-                    additonalClassesToFetch);
+        partlyWalkedClasses.removeAll(fullyWalkedClasses);
 
-            returnList.add(additionalFetchInfo);
+        for (BuildInfo buildInfo : buildInfoSet) {
+            if (partlyWalkedClasses.contains(buildInfo.getD3Class())
+                    && !newBuildInfoSet.contains(buildInfo)) {
+                unwalkedBuilds.add(buildInfo);
+            }
         }
 
-        return returnList;
+        return unwalkedBuilds;
     }
 
     /**
-     * Extracts all the build-data from the given URL.
+     * Downloads the details of all the given builds. Any build that fails to
+     * download is left out of the returned set.
      */
-    private Set<BuildInfo> getBuilds(String url) {
-        Set<BuildInfo> buildSet = new HashSet<>();
-
-        Document document = getDocument(url);
-        buildSet.addAll(extractBuildInfo(document));
-        Set<BuildInfo> upToDateBuilds = extractUpToDateBuilds(buildSet);
-
+    private Set<BuildInfo> downloadBuilds(Set<BuildInfo> buildSet) {
         if (buildSet.isEmpty()) {
             updateProgress(1, 1);
             showStatusBarMessage("All builds are up to date!", 500);
 
-            buildSet.addAll(upToDateBuilds);
             return buildSet;
         }
 
-        // Let's check if we've been interrupted, do this before initializing a
-        // BuildDownloader since that spawns a bunch more threads
+        Set<BuildInfo> failedBuilds = downloadBuildDetails(buildSet,
+                "Downloading build %d of %d");
+
+        if (!failedBuilds.isEmpty()) {
+            downloadedAllBuilds = false;
+        }
+
+        buildSet.removeAll(failedBuilds);
+        return buildSet;
+    }
+
+    /**
+     * Queues all the given builds on the {@link BuildDownloader} and merges
+     * their details into them as the downloads finish.
+     * 
+     * @param buildSet
+     *            The builds to download.
+     * @param progressFormat
+     *            The progress message, given the current and total count.
+     * 
+     * @return A {@link Set} of any builds that failed to download.
+     */
+    private Set<BuildInfo> downloadBuildDetails(Set<BuildInfo> buildSet,
+            String progressFormat) {
+
+        Set<BuildInfo> failedBuilds = new HashSet<>();
+
         if (Thread.interrupted()) {
-            return Collections.emptySet();
+            return failedBuilds;
         }
 
-        buildDownloader = new BuildDownloader(THREAD_COUNT, buildSet.size());
+        BlockingQueue<ResultItem<Pair<BuildInfo, BuildDetails>>> resultQueue = new LinkedBlockingQueue<>();
+
+        // Finished builds are published as they come in, so they show up
+        // right away and aren't lost if the update is cancelled
+        Set<BuildInfo> publishBatch = new HashSet<>();
+        long lastPublished = System.currentTimeMillis();
 
         for (BuildInfo buildInfo : buildSet) {
-            buildDownloader.queueWork(buildInfo);
+            buildDownloader.queueWork(buildInfo).thenAccept(resultQueue::add);
         }
 
-        long workDone = 1;
-        updateProgress(workDone, buildSet.size());
+        int totalWork = buildSet.size();
+        updateProgress(0, totalWork);
 
-        Set<BuildInfo> failedBuilds = new HashSet<>();
+        try {
 
-        while (buildDownloader.hasWork()) {
-            if (isCancelled()) {
-                buildDownloader.cancelWork();
-                break;
-            }
+            for (int workDone = 1; workDone <= totalWork; workDone++) {
+                if (isCancelled()) {
+                    break;
+                }
 
-            updateMessage("Downloading build " + workDone + " of " + buildSet.size());
+                updateMessage(String.format(progressFormat, workDone, totalWork));
 
-            ResultItem<Pair<BuildInfo, Document>> resultItem = buildDownloader
-                    .getResult();
+                ResultItem<Pair<BuildInfo, BuildDetails>> resultItem = resultQueue
+                        .take();
 
-            if (resultItem.succeeded()) {
+                if (resultItem.succeeded()) {
 
-                Pair<BuildInfo, Document> buildInfoResult = resultItem.getResult();
-                processBuildInfo(buildInfoResult.getKey(), buildInfoResult.getValue());
+                    Pair<BuildInfo, BuildDetails> buildInfoResult = resultItem
+                            .getResult();
+                    buildInfoResult.getValue().applyTo(buildInfoResult.getKey());
 
-            } else {
+                    publishBatch.add(buildInfoResult.getKey());
+                    checkpoint.addBuild(buildInfoResult.getKey());
+
+                } else {
 
-                Throwable throwable = resultItem.getThrowable();
+                    Throwable throwable = resultItem.getThrowable();
 
-                if (throwable instanceof IOException) {
+                    if ((throwable instanceof IOException) == false) {
+                        // We only expect IOExceptions here, anything else is
+                        // actually bad
+                        throw new RuntimeException(throwable);
+                    }
 
                     failedBuilds.add(resultItem.getResult().getKey());
-                    downloadedAllBuilds = false;
 
-                } else {
-                    throw new RuntimeException(throwable);
                 }
 
+                updateProgress(workDone, totalWork);
+
+                if (publishBatch.size() >= PUBLISH_BATCH_SIZE || System
+                        .currentTimeMillis() - lastPublished >= PUBLISH_INTERVAL_MILLIS) {
+
+                    publishBuilds(publishBatch);
+                    lastPublished = System.currentTimeMillis();
+                }
             }
 
-            updateProgress(workDone, buildSet.size());
-            workDone++;
+        } catch (InterruptedException e) {
+            // We were cancelled while waiting on a build
+            Thread.currentThread().interrupt();
+        } finally {
+            publishBuilds(publishBatch);
         }
 
-        buildSet.removeAll(failedBuilds);
-        buildSet.addAll(upToDateBuilds);
-        return buildSet;
+        return failedBuilds;
+    }
+
+    /**
+     * Hands the given builds to {@link BuildDataManager} and clears the set.
+     */
+    private void publishBuilds(Set<BuildInfo> publishBatch) {
+        if (publishBatch.isEmpty()) {
+            return;
+        }
+
+        BuildDataManager.addBuilds(new HashSet<>(publishBatch));
+        publishBatch.clear();
+    }
+
+    /**
+     * Parses the {@link UserPreferences} and plans what listings to fetch. URLs
+     * that overlap are merged, see {@link FetchPlanner}.
+     */
+    private List<FetchPlanner.Listing> buildFetchPlan() {
+        FetchPlanner fetchPlanner = new FetchPlanner();
+
+        fetchPlanner.add(UserPreferences.get(PrefKey.BUILDS_URL),
+                UserPreferences.getInteger(PrefKey.PAGE_COUNT));
+
+        // Now let's process additional URLs
+
+        List<String> additionalFetchUrls = UserPreferences
+                .getList(PrefKey.ADDITIONAL_BUILD_URLS);
+        List<String> additionalPageCounts = UserPreferences
+                .getList(PrefKey.ADDITIONAL_PAGE_COUNTS);
+
+        if (additionalFetchUrls.isEmpty() || additionalPageCounts.isEmpty()) {
+            return fetchPlanner.plan();
+        }
+
+        for (int i = 0; i < additionalFetchUrls.size(); i++) {
+            fetchPlanner.add(additionalFetchUrls.get(i),
+                    Integer.parseInt(additionalPageCounts.get(i)));
+        }
+
+        return fetchPlanner.plan();
     }
 
     /**
@@ -310,66 +626,87 @@ public final class Scraper extends Task<Boolean> {
 
         while (currentInfoIterator.hasNext()) {
             BuildInfo currentBuildInfo = currentInfoIterator.next();
-            boolean buildRemoved = false;
-
-            // Remove any builds we had before we started the fetch
-            Iterator<BuildInfo> oldInfoIterator = buildInfoSet.iterator();
 
-            while (oldInfoIterator.hasNext()) {
-                BuildInfo oldBuildInfo = oldInfoIterator.next();
+            // Builds listed by earlier URLs during this session were taken
+            // from this same index, so they're covered here as well
+            BuildInfo oldBuildInfo = storedBuildIndex.get(currentBuildInfo);
 
-                // Update any build that are missing these fields, they were
-                // added in a later version
-                if (oldBuildInfo.getAuthor().isEmpty()
-                        || oldBuildInfo.getPatch().isEmpty()) {
+            boolean buildIsUpToDate = oldBuildInfo != null && currentBuildInfo
+                    .getBuildLastUpdated() == oldBuildInfo.getBuildLastUpdated();
 
-                    break;
+            // If the build is up to date, we'll only update its score. The
+            // stored build is still in use, so it gets a copy.
+            if (buildIsUpToDate) {
+                if (currentBuildInfo.getBuildScore() != oldBuildInfo.getBuildScore()) {
+                    oldBuildInfo = oldBuildInfo
+                            .withBuildScore(currentBuildInfo.getBuildScore());
+                    storedBuildIndex.put(oldBuildInfo, oldBuildInfo);
                 }
 
-                boolean buildIsUpToDate = currentBuildInfo.equals(oldBuildInfo)
-                        && currentBuildInfo.getBuildLastUpdated() == oldBuildInfo
-                                .getBuildLastUpdated();
+                cachedBuilds.add(oldBuildInfo);
+                currentInfoIterator.remove();
+            }
+        }
 
-                // If the build is up to date, we'll only update a few fields
-                if (buildIsUpToDate) {
-                    if (currentBuildInfo.getBuildScore() != oldBuildInfo
-                            .getBuildScore()) {
-                        oldBuildInfo.setBuildScore(currentBuildInfo.getBuildScore());
-                    }
+        return cachedBuilds;
+    }
 
-                    cachedBuilds.add(oldBuildInfo);
-                    currentInfoIterator.remove();
+    /**
+     * Indexes the given builds by build id and class, which is what
+     * {@link BuildInfo#equals(Object)} compares, so checking a listed build
+     * against them is a single lookup.
+     * 
+     * <p>
+     * Builds that are missing the author or patch are left out so they get
+     * downloaded again, those fields were added in a later version.
+     * </p>
+     */
+    private Map<BuildInfo, BuildInfo> indexBuilds(Collection<BuildInfo> builds) {
+        Map<BuildInfo, BuildInfo> buildIndex = new HashMap<>(builds.size() * 4 / 3 + 1);
 
-                    buildRemoved = true;
-                    break;
-                }
+        for (BuildInfo buildInfo : builds) {
+            if (buildInfo.getAuthor().isEmpty() || buildInfo.getPatch().isEmpty()) {
+                continue;
             }
 
-            // Remove any builds we might've gotten from earlier URLs during
-            // this session, assuming they were removed above
-            Iterator<BuildInfo> newInfoIterator = newBuildInfoSet.iterator();
-            while (!buildRemoved && newInfoIterator.hasNext()) {
-                BuildInfo newBuildInfo = newInfoIterator.next();
+            buildIndex.put(buildInfo, buildInfo);
+        }
 
-                if (currentBuildInfo.equals(newBuildInfo) && currentBuildInfo
-                        .getBuildLastUpdated() == newBuildInfo.getBuildLastUpdated()) {
+        return buildIndex;
+    }
 
-                    cachedBuilds.add(newBuildInfo);
-                    currentInfoIterator.remove();
-                    break;
-                }
-            }
+    /**
+     * Stores everything the listing pages told us right away, for a quick
+     * refresh. Builds that are up to date get their new score. Builds that
+     * changed keep their old details for now, along with their old last
+     * updated date, so they're picked up again if the download that follows
+     * doesn't finish.
+     */
+    private void storeListedBuilds(Set<BuildInfo> buildsToDownload) {
+        Set<BuildInfo> listedBuilds = new HashSet<>(newBuildInfoSet);
+
+        for (BuildInfo buildInfo : buildsToDownload) {
+            BuildInfo storedBuildInfo = storedBuildIndex.get(buildInfo);
 
+            if (storedBuildInfo != null) {
+                listedBuilds.add(storedBuildInfo.withBuildScore(buildInfo.getBuildScore()));
+            }
         }
 
-        return cachedBuilds;
+        listedBuilds.addAll(extractUnwalkedBuilds());
+        updateStoredBuildInfo(listedBuilds, false);
     }
 
     /**
      * Updates the local storage of {@link BuildInfo} instances to the new ones
      * that were just downloaded.
+     * 
+     * @param updateLostFavorites
+     *            If true, favorites that are no longer listed are downloaded
+     *            again, otherwise they're kept as they are.
      */
-    private void updateStoredBuildInfo(Set<BuildInfo> newBuildInfoSet) {
+    private void updateStoredBuildInfo(Set<BuildInfo> newBuildInfoSet,
+            boolean updateLostFavorites) {
         List<BuildInfo> favoriteBuilds = new ArrayList<>(
                 BuildDataManager.getFavoriteBuilds());
 
@@ -389,112 +726,46 @@ public final class Scraper extends Task<Boolean> {
             }
         });
 
-        if (lostFavoriteBuilds.size() >= 1) {
+        if (updateLostFavorites && lostFavoriteBuilds.size() >= 1) {
             showStatusBarMessage("Updating favorites", 500);
             updateProgress(0, 1);
 
             updateLostFavoriteBuilds(lostFavoriteBuilds);
         }
 
-        buildInfoSet.clear();
-        buildInfoSet.addAll(newBuildInfoSet);
-        buildInfoSet.addAll(lostFavoriteBuilds);
+        Set<BuildInfo> updatedBuilds = new HashSet<>(newBuildInfoSet);
+        updatedBuilds.addAll(lostFavoriteBuilds);
 
-        updateProgress(1, 1);
-        showStatusBarMessage("Done!", 500);
+        BuildDataManager.replaceBuilds(updatedBuilds, changeCount);
     }
 
     /**
      * Updates any favorite builds that weren't caught in the main update flow.
-     * 
-     * TODO: This method and {@link #getBuilds(String)} are great refactoring
-     * candidates. The download-loop should be more decoupled.
      */
     private Set<BuildInfo> updateLostFavoriteBuilds(Set<BuildInfo> lostFavoriteBuilds) {
-        if (Thread.interrupted()) {
-            return Collections.emptySet();
-        }
-
-        buildDownloader = new BuildDownloader(THREAD_COUNT, lostFavoriteBuilds.size());
-        lostFavoriteBuilds.forEach(build -> buildDownloader.queueWork(build));
-
-        long workDone = 1;
-        long totalWork = lostFavoriteBuilds.size();
-        updateProgress(workDone, totalWork);
-
-        while (buildDownloader.hasWork()) {
-            if (isCancelled()) {
-                buildDownloader.cancelWork();
-                break;
-            }
-
-            updateMessage("Updating build " + workDone + " of " + totalWork);
-
-            ResultItem<Pair<BuildInfo, Document>> resultItem = buildDownloader
-                    .getResult();
-
-            if (resultItem.succeeded()) {
-
-                Pair<BuildInfo, Document> buildInfoResult = resultItem.getResult();
-                processBuildInfo(buildInfoResult.getKey(), buildInfoResult.getValue());
-
-            } else {
-
-                Throwable throwable = resultItem.getThrowable();
-
-                if ((throwable instanceof IOException) == false) {
-                    // We only expect IOExceptions here, anything else is
-                    // actually bad
-                    throw new RuntimeException(throwable);
-                }
-
-            }
-
-            updateProgress(workDone, totalWork);
-            workDone++;
-        }
-
+        downloadBuildDetails(lostFavoriteBuilds, "Updating build %d of %d");
         return lostFavoriteBuilds;
     }
 
     /**
-     * Fetches a {@link Document} instance from the given URL.
-     * 
-     * @throws IllegalStateException
-     *             If the {@link Document} couldn't be fetched.
-     */
-    private Document getDocument(String stringUrl) {
-
-        try {
-
-            URL url = new URL(stringUrl);
-            BufferedReader bufferedReader = new BufferedReader(
-                    new InputStreamReader(url.openStream(), "UTF-8"));
-
-            StringBuilder html = new StringBuilder();
-            bufferedReader.lines().forEach(html::append);
-            bufferedReader.close();
-
-            return Jsoup.parse(html.toString());
-
-        } catch (IOException e) {
-            throw new IllegalStateException("Could not fetch the document", e);
-        }
-
-    }
-
-    /**
-     * Extracts baseline information about all the builds in the given document.
+     * Extracts baseline information about all the builds in the document of
+     * the given listing page.
      * 
      * <p>
      * We're extracting the name of the build, its score, what class it is for
-     * and its URL.
+     * and its URL. How many rows the page has, and whether they're sorted by
+     * last update, is noted on the listing page.
      * </p>
      */
-    private Set<BuildInfo> extractBuildInfo(Document document) {
+    private Set<BuildInfo> extractBuildInfo(ListingPage listingPage)
+            throws InterruptedException, ExecutionException {
+
         Set<BuildInfo> builds = new HashSet<>();
 
-        Elements table = document.select(".listing-builds tbody tr");
+        Elements table = listingPage.document.get().select(".listing-builds tbody tr");
+        long previousLastUpdated = Long.MAX_VALUE;
+
+        listingPage.rowCount = 0;
 
         for (Element trElement : table) {
 
@@ -502,6 +773,17 @@ public final class Scraper extends Task<Boolean> {
                 return Collections.emptySet();
             }
 
+            listingPage.rowCount++;
+
+            Elements dateTimeElements = trElement.getElementsByClass("standard-datetime");
+            long buildLastUpdated = Long.parseLong(dateTimeElements.attr("data-epoch"));
+
+            if (buildLastUpdated > previousLastUpdated) {
+                listingPage.sortedByUpdate = false;
+            }
+
+            previousLastUpdated = buildLastUpdated;
+
             // Extract the score first since we might not save this build given
             // a particular score
             Elements buildScoreElements = trElement.getElementsByClass("rating-sum");
@@ -538,9 +820,6 @@ public final class Scraper extends Task<Boolean> {
             Elements buildUrlElements = trElement.getElementsByClass("d3build");
             String urlPart = buildUrlElements.attr("href");
 
-            Elements dateTimeElements = trElement.getElementsByClass("standard-datetime");
-            long buildLastUpdated = Long.parseLong(dateTimeElements.attr("data-epoch"));
-
             builds.add(new BuildInfo(d3Class, BASELINE_URL + urlPart, buildLastUpdated,
                     score));
         }
@@ -548,89 +827,6 @@ public final class Scraper extends Task<Boolean> {
         return builds;
     }
 
-    /**
-     * Takes a baseline {@link BuildInfo} object and populates it with
-     * {@link BuildGear} data.
-     * 
-     * @param buildInfo
-     *            The {@link BuildInfo} to populate.
-     * @param document
-     *            All the HTML data for this {@link BuildInfo} instance.
-     * 
-     * @throws IllegalStateException
-     *             If the given {@link BuildInfo} instance doesn't have a URL.
-     */
-    private void processBuildInfo(BuildInfo buildInfo, Document document) {
-        if (buildInfo.getBuildUrl().toString().isEmpty()) {
-            throw new IllegalStateException("The given BuildInfo does not have a URL.");
-        }
-
-        String buildName = getRawText(document.select(".build-title"));
-
-        String cubeWeapon = getRawText(document.select("#kanai-weapon>span"));
-        String cubeArmor = getRawText(document.select("#kanai-armor>span"));
-        String cubeJewelry = getRawText(document.select("#kanai-jewelry>span"));
-
-        BuildGear buildGear = new BuildGear();
-        buildGear.cubeWeapon = cubeWeapon;
-        buildGear.cubeArmor = cubeArmor;
-        buildGear.cubeJewelry = cubeJewelry;
-
-        buildGear.headSlot.addAll(extractItems(document, "head"));
-        buildGear.shoulderSlot.addAll(extractItems(document, "shoulders"));
-        buildGear.amuletSlot.addAll(extractItems(document, "amulet"));
-        buildGear.torsoSlot.addAll(extractItems(document, "torso"));
-        buildGear.wristSlot.addAll(extractItems(document, "wrists"));
-        buildGear.handSlot.addAll(extractItems(document, "hands"));
-        buildGear.waistSlot.addAll(extractItems(document, "waist"));
-        buildGear.legSlot.addAll(extractItems(document, "legs"));
-        buildGear.feetSlot.addAll(extractItems(document, "feet"));
-        buildGear.ringSlot.addAll(extractItems(document, "rings"));
-        buildGear.weaponSlot.addAll(extractItems(document, "weapon"));
-        buildGear.offhandSlot.addAll(extractItems(document, "offhand"));
-
-        buildInfo.setBuildName(buildName);
-        buildInfo.setBuildGear(buildGear);
-
-        String author = getRawText(document
-                .select("#content > section > div.build-detail > div.build-byline > a"));
-
-        buildInfo.setAuthor(author);
-
-        String patch = getRawText(document.select(
-                "#content > section > div.build-detail > div.build-byline > span"));
-
-        // Format is: Patch X.Y.Z, we don't want the "Patch " part.
-        patch = patch.substring(6);
-        buildInfo.setPatch(patch);
-    }
-
-    /**
-     * Extracts items from a build-document.
-     * 
-     * @param document
-     *            The {@link Document} for this build.
-     * @param itemSlot
-     *            The item-slot to extract.
-     * 
-     * @return Returns a {@link Set} of items found in that slot.
-     */
-    private Set<String> extractItems(Document document, String itemSlot) {
-        Elements headElements = document.select("#item-" + itemSlot + ">ul>li");
-
-        return headElements.stream()
-                .filter(e -> !e.getElementsByClass("build-item").text().isEmpty())
-                .map(e -> getRawText(e.getElementsByClass("build-item")))
-                .collect(Collectors.toSet());
-    }
-
-    /**
-     * Performs any necessary processing on the text extracted from an element.
-     */
-    private String getRawText(Elements elements) {
-        return elements.text().replaceAll("", "'");
-    }
-
     /**
      * Pauses the current thread and displays a message in the status-bar.
      * 
@@ -655,16 +851,46 @@ public final class Scraper extends Task<Boolean> {
     //
     // ----------------------------------------------
 
-    private class FetchInfo {
+    /**
+     * A single listing page to fetch, such as page 2 of the Wizard builds.
+     */
+    private class ListingPage {
+
+        private final String url;
+        private final FetchPlanner.Listing listing;
+        private final int pageNumber;
+
+        // The pages of a listing are chained together in order
+        private boolean firstPage = true;
+        private ListingPage nextPage;
+
+        // What the fetched page looked like, see extractBuildInfo(). Not known
+        // for a checkpointed page, which is never taken for up to date.
+        private int rowCount = -1;
+        private boolean sortedByUpdate = true;
+
+        // The builds listed on this page, if a checkpointed update already
+        // fetched it, otherwise the page as it's being fetched
+        private Set<BuildInfo> checkpointedBuilds;
+        private CompletableFuture<Document> document;
+
+        public ListingPage(String url, FetchPlanner.Listing listing, int pageNumber) {
+            this.url = url;
+            this.listing = listing;
+            this.pageNumber = pageNumber;
+        }
+
+        /**
+         * Returns how many pages of the same listing come after this one.
+         */
+        public int countFollowingPages() {
+            int count = 0;
 
-        private String fetchUrl;
-        private int pageCount;
-        private final Set<Integer> classesToFetch = new HashSet<>();
+            for (ListingPage page = nextPage; page != null; page = page.nextPage) {
+                count++;
+            }
 
-        public FetchInfo(String fetchUrl, int pageCount, Set<Integer> classesToFetch) {
-            this.fetchUrl = fetchUrl;
-            this.pageCount = pageCount;
-            this.classesToFetch.addAll(classesToFetch);
+            return count;
         }
 
     }
@@ -0,0 +1,366 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+
+/**
+ * Records the progress of an update as it goes, so an update that was
+ * cancelled or cut short by closing the application can pick up where it left
+ * off.
+ * 
+ * <p>
+ * Every listing page that has been fetched is recorded along with the builds
+ * listed on it, and every build that has been downloaded is recorded along
+ * with its details. The next update with the same listing pages reads them
+ * back through {@link #open(List)}, skips those pages and only downloads the
+ * builds that are still missing. The checkpoint is deleted once an update
+ * finishes.
+ * </p>
+ * 
+ * <pre>
+ * Header        magic "BFCP", version (byte), hash of the listing page URLs (int)
+ * Page          type (byte), URL, build count (int), listed builds
+ * Build         type (byte), listed build, name, author, patch, items of
+ *               every gear slot as a count (short) followed by the names
+ * Listed build  class (byte), URL, last updated (long), score (int)
+ * </pre>
+ * 
+ * <p>
+ * Records are appended as they come in. A record that was cut short is
+ * dropped when the checkpoint is opened again.
+ * </p>
+ */
+final class UpdateCheckpoint {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final int MAGIC = 0x42464350;
+    private static final byte VERSION = 1;
+
+    private static final byte PAGE_RECORD = 1;
+    private static final byte BUILD_RECORD = 2;
+
+    /**
+     * A checkpoint older than this is thrown away, the listings it recorded
+     * are likely out of date by now.
+     */
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final File file;
+
+    private final Map<String, Set<BuildInfo>> completedPages = new HashMap<>();
+    private final Set<BuildInfo> completedBuilds = new HashSet<>();
+
+    private DataOutputStream outputStream;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    /**
+     * Creates a checkpoint backed by the given file. Nothing is read or
+     * written until {@link #open(List)} is called.
+     */
+    public UpdateCheckpoint(File file) {
+        this.file = file;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Reads back what an earlier update recorded and gets ready to record
+     * this one. A checkpoint that was made for different listing pages, or
+     * is too old, is started over.
+     * 
+     * @param pageUrls
+     *            The URLs of all the listing pages this update fetches.
+     */
+    public synchronized void open(List<String> pageUrls) throws IOException {
+        completedPages.clear();
+        completedBuilds.clear();
+
+        int planHash = pageUrls.hashCode();
+        long validLength = 0;
+
+        if (file.exists()
+                && System.currentTimeMillis() - file.lastModified() < MAX_AGE_MILLIS) {
+            validLength = read(Files.readAllBytes(file.toPath()), planHash);
+        }
+
+        file.getParentFile().mkdirs();
+
+        if (validLength == 0) {
+            try (DataOutputStream header = new DataOutputStream(
+                    new FileOutputStream(file))) {
+                header.writeInt(MAGIC);
+                header.writeByte(VERSION);
+                header.writeInt(planHash);
+            }
+        } else {
+            // Drop a record that was cut short, so the next one lines up
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(validLength);
+            }
+        }
+
+        outputStream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Returns the builds listed on each listing page an earlier update
+     * fetched, by page URL.
+     */
+    public synchronized Map<String, Set<BuildInfo>> getCompletedPages() {
+        return Collections.unmodifiableMap(new HashMap<>(completedPages));
+    }
+
+    /**
+     * Returns the builds an earlier update downloaded, details and all.
+     */
+    public synchronized Set<BuildInfo> getCompletedBuilds() {
+        return Collections.unmodifiableSet(new HashSet<>(completedBuilds));
+    }
+
+    /**
+     * Records a fetched listing page and the builds listed on it.
+     */
+    public synchronized void addPage(String pageUrl, Collection<BuildInfo> listedBuilds) {
+        if (outputStream == null) {
+            return;
+        }
+
+        try {
+
+            outputStream.writeByte(PAGE_RECORD);
+            outputStream.writeUTF(pageUrl);
+            outputStream.writeInt(listedBuilds.size());
+
+            for (BuildInfo buildInfo : listedBuilds) {
+                writeListedBuild(buildInfo);
+            }
+
+            outputStream.flush();
+
+        } catch (IOException e) {
+            abandon(e);
+        }
+    }
+
+    /**
+     * Records a downloaded build and its details.
+     */
+    public synchronized void addBuild(BuildInfo buildInfo) {
+        if (outputStream == null) {
+            return;
+        }
+
+        try {
+
+            outputStream.writeByte(BUILD_RECORD);
+            writeListedBuild(buildInfo);
+
+            outputStream.writeUTF(nullToEmpty(buildInfo.getBuildName()));
+            outputStream.writeUTF(nullToEmpty(buildInfo.getAuthor()));
+            outputStream.writeUTF(nullToEmpty(buildInfo.getPatch()));
+
+            BuildGear buildGear = buildInfo.getBuildGear();
+
+            for (GearSlot gearSlot : GearSlot.values()) {
+                Set<String> items = (buildGear == null) ? Collections.emptySet()
+                        : buildGear.getItems(gearSlot);
+
+                outputStream.writeShort(items.size());
+                for (String item : items) {
+                    outputStream.writeUTF(item);
+                }
+            }
+
+            outputStream.flush();
+
+        } catch (IOException e) {
+            abandon(e);
+        }
+    }
+
+    /**
+     * Stops recording, the checkpoint stays on disk for the next update.
+     */
+    public synchronized void close() {
+        if (outputStream == null) {
+            return;
+        }
+
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        outputStream = null;
+    }
+
+    /**
+     * Stops recording and deletes the checkpoint, meant for when the update
+     * finished and there's nothing left to resume.
+     */
+    public synchronized void delete() {
+        close();
+
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Reads the records in the given checkpoint data.
+     * 
+     * @return The length of the data that could be read, or 0 if none of it
+     *         can be used.
+     */
+    private long read(byte[] data, int planHash) {
+        ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
+        DataInputStream inputStream = new DataInputStream(byteStream);
+
+        try {
+
+            if (inputStream.readInt() != MAGIC || inputStream.readByte() != VERSION
+                    || inputStream.readInt() != planHash) {
+                return 0;
+            }
+
+        } catch (IOException e) {
+            return 0;
+        }
+
+        long validLength = data.length - byteStream.available();
+
+        try {
+
+            while (byteStream.available() > 0) {
+                byte recordType = inputStream.readByte();
+
+                if (recordType == PAGE_RECORD) {
+                    String pageUrl = inputStream.readUTF();
+                    int buildCount = inputStream.readInt();
+
+                    List<BuildInfo> listedBuilds = new ArrayList<>();
+                    for (int i = 0; i < buildCount; i++) {
+                        listedBuilds.add(readListedBuild(inputStream));
+                    }
+
+                    completedPages.put(pageUrl, new HashSet<>(listedBuilds));
+                } else if (recordType == BUILD_RECORD) {
+                    completedBuilds.add(readBuild(inputStream));
+                } else {
+                    throw new IOException("Unknown checkpoint record: " + recordType);
+                }
+
+                validLength = data.length - byteStream.available();
+            }
+
+        } catch (IOException e) {
+            // A record cut short, everything before it is still good
+        }
+
+        return validLength;
+    }
+
+    private BuildInfo readBuild(DataInputStream inputStream) throws IOException {
+        BuildInfo buildInfo = readListedBuild(inputStream);
+
+        buildInfo.setBuildName(inputStream.readUTF());
+        buildInfo.setAuthor(inputStream.readUTF());
+        buildInfo.setPatch(inputStream.readUTF());
+
+        BuildGear buildGear = new BuildGear();
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            int itemCount = inputStream.readShort();
+
+            List<String> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(inputStream.readUTF());
+            }
+
+            buildGear.setItems(gearSlot, items);
+        }
+
+        buildInfo.setBuildGear(buildGear);
+        return buildInfo;
+    }
+
+    private BuildInfo readListedBuild(DataInputStream inputStream) throws IOException {
+        int classIndex = inputStream.readByte();
+
+        if (classIndex < 0 || classIndex >= D3Class.values().length) {
+            throw new IOException("Corrupt checkpoint class: " + classIndex);
+        }
+
+        String url = inputStream.readUTF();
+        long buildLastUpdated = inputStream.readLong();
+        int score = inputStream.readInt();
+
+        return new BuildInfo(D3Class.values()[classIndex], url, buildLastUpdated, score);
+    }
+
+    private void writeListedBuild(BuildInfo buildInfo) throws IOException {
+        outputStream.writeByte(buildInfo.getD3Class().ordinal());
+        outputStream.writeUTF(buildInfo.getBuildUrl().toString());
+        outputStream.writeLong(buildInfo.getBuildLastUpdated());
+        outputStream.writeInt(buildInfo.getBuildScore());
+    }
+
+    /**
+     * Gives up on recording this update. The update itself carries on, it
+     * just can't be resumed past this point.
+     */
+    private void abandon(IOException e) {
+        e.printStackTrace();
+        close();
+    }
+
+    private static String nullToEmpty(String value) {
+        return (value == null) ? "" : value;
+    }
+
+}
@@ -132,10 +132,16 @@ public class UserPreferences {
         
         BUILDS_URL("builds_url"),
         PAGE_COUNT("page_count"),
+        STOP_AT_UP_TO_DATE_PAGES("stop_at_up_to_date_pages"),
         CHECK_FOR_UPDATES("check_for_updates"),
         
         ADDITIONAL_BUILD_URLS("additional_build_urls"),
-        ADDITIONAL_PAGE_COUNTS("additional_page_counts");
+        ADDITIONAL_PAGE_COUNTS("additional_page_counts"),
+        
+        CONNECT_TIMEOUT("connect_timeout"),
+        READ_TIMEOUT("read_timeout"),
+        MAX_CONNECTIONS_PER_HOST("max_connections_per_host"),
+        DOWNLOAD_CONCURRENCY("download_concurrency");
         
         // @formatter:on
 
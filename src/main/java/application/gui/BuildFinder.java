@@ -9,6 +9,7 @@ import java.util.Optional;
 import org.controlsfx.control.StatusBar;
 
 import application.BuildDataManager;
+import application.LoadBuildsTask;
 import application.UpdateTask;
 import application.config.ColumnStateMarshaller;
 import application.config.UserPreferences;
@@ -77,7 +78,11 @@ public class BuildFinder extends Application {
     // ----------------------------------------------
 
     public static void main(String[] args) {
-        BuildDataManager.loadBuilds();
+        // Builds are saved in the background, make sure nothing is lost on
+        // the way out. Covers System.exit as well as closing the window.
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(BuildDataManager::flushBuilds, "Flush builds"));
+
         launch(args);
     }
 
@@ -112,6 +117,7 @@ public class BuildFinder extends Application {
         setupPrimaryStage(primaryStage);
         primaryStage.show();
 
+        loadBuilds();
         performFirstTimeBoot();
         automaticUpdateCheck();
     }
@@ -234,8 +240,8 @@ public class BuildFinder extends Application {
      * Creates and returns the primary {@link Scene} of the application.
      */
     private Scene createMainScene() {
-        // Setup status bar
-        updateStatusBarText();
+        // Setup status bar, the text is filled in once the builds are loaded
+        statusBar.setText(" Loading builds...");
         statusBar.setMaxHeight(15);
         statusBar.getRightItems().add(statusBarProgressBar);
         statusBarProgressBar.hide();
@@ -308,6 +314,38 @@ public class BuildFinder extends Application {
         return scene;
     }
 
+    /**
+     * Loads the stored builds in the background. The main view is kept in a
+     * loading state until they're ready.
+     */
+    private void loadBuilds() {
+        Task<String> loadBuildsTask = new LoadBuildsTask();
+
+        mainController.setLoading(true);
+        statusBarProgressBar.setTask(loadBuildsTask);
+        statusBarProgressBar.show();
+
+        loadBuildsTask.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> {
+            ExceptionDialog exceptionDialog = new ExceptionDialog(AlertType.ERROR,
+                    "Failed to load the stored builds.", e.getSource().getException());
+
+            exceptionDialog.initOwner(primaryStage);
+            exceptionDialog.showAndWait();
+            System.exit(0);
+        });
+
+        loadBuildsTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> {
+            statusBar.setText(" " + loadBuildsTask.getValue());
+            statusBarProgressBar.hide();
+
+            mainController.setLoading(false);
+        });
+
+        Thread loadThread = new Thread(loadBuildsTask, "Build loader");
+        loadThread.setDaemon(true);
+        loadThread.start();
+    }
+
     private void openDiabloBuildsWebsite() {
         getHostServices().showDocument(UserPreferences.get(PrefKey.BUILDS_URL));
     }
@@ -12,6 +12,7 @@ import java.time.format.FormatStyle;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import application.BuildDataManager;
+import application.BuildQuery;
 import application.Scraper;
 import application.config.ColumnStateMarshaller;
 import application.config.UserPreferences;
@@ -122,6 +124,7 @@ public final class MainController {
     private ObservableList<BuildInfo> tableBuildList = FXCollections
             .observableArrayList();
     private String currentlyFilteredItem = "";
+    private boolean loading;
 
     // ----------------------------------------------
     //
@@ -145,6 +148,10 @@ public final class MainController {
         buildTableColumns.put(BuildTableColumn.NAME, nameColumn);
         buildTableColumns.put(BuildTableColumn.PATCH, patchColumn);
         buildTableColumns.put(BuildTableColumn.SCORE, scoreColumn);
+
+        // Builds are added from the scraper thread while an update runs
+        BuildDataManager.addBuildsListener(
+                addedBuilds -> Platform.runLater(() -> showAddedBuilds(addedBuilds)));
     }
 
     // ----------------------------------------------
@@ -274,6 +281,32 @@ public final class MainController {
         itemFilterListView.requestFocus();
     }
 
+    /**
+     * Puts the view in a loading state while the stored builds are being
+     * loaded. Items can still be picked in the meantime, the builds for the
+     * picked item are shown once loading is done.
+     */
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+
+        updateBuildsButton.setDisable(loading);
+        showFavoriteBuildsButton.setDisable(loading);
+
+        if (loading) {
+            buildTableView.setPlaceholder(new Label("Loading builds..."));
+            return;
+        }
+
+        buildTableView.setPlaceholder(null);
+
+        if (!currentlyFilteredItem.isEmpty()) {
+            String item = currentlyFilteredItem;
+            currentlyFilteredItem = "";
+
+            displayBuildsForItem(item);
+        }
+    }
+
     // ----------------------------------------------
     //
     // Private API
@@ -296,7 +329,8 @@ public final class MainController {
         }
 
         currentlyFilteredItem = item;
-        Set<BuildInfo> matchingBuilds = BuildDataManager.getBuildsWithItem(item);
+        Set<BuildInfo> matchingBuilds = BuildDataManager
+                .findBuilds(BuildQuery.item(item));
 
         tableBuildList.clear();
         tableBuildList.addAll(matchingBuilds);
@@ -305,7 +339,43 @@ public final class MainController {
         buildTableView.getSortOrder().clear();
         buildTableView.getSortOrder().add(scoreColumn);
 
-        buildTableView.setPlaceholder(new Label("No builds found for " + item));
+        if (!loading) {
+            buildTableView.setPlaceholder(new Label("No builds found for " + item));
+        }
+    }
+
+    /**
+     * Adds any of the given builds that match the item currently shown to the
+     * table. Builds already in the table are replaced by their new version,
+     * or dropped if their new version no longer matches.
+     */
+    private void showAddedBuilds(Set<BuildInfo> addedBuilds) {
+        mainReference.updateStatusBarText();
+
+        Set<BuildInfo> replacedBuilds = new HashSet<>(tableBuildList);
+        replacedBuilds.retainAll(addedBuilds);
+
+        Set<BuildInfo> shownBuilds;
+
+        // Favorites are shown, or nothing at all. Nothing new is added, but
+        // the builds shown must be the stored ones.
+        if (currentlyFilteredItem.isEmpty()) {
+            shownBuilds = new HashSet<>(addedBuilds);
+            shownBuilds.retainAll(replacedBuilds);
+        } else {
+            shownBuilds = BuildDataManager
+                    .findBuilds(BuildQuery.item(currentlyFilteredItem));
+            shownBuilds.retainAll(addedBuilds);
+        }
+
+        if (replacedBuilds.isEmpty() && shownBuilds.isEmpty()) {
+            return;
+        }
+
+        tableBuildList.removeAll(replacedBuilds);
+        tableBuildList.addAll(shownBuilds);
+
+        buildTableView.sort();
     }
 
     /**
@@ -385,8 +455,7 @@ public final class MainController {
 
             toggleFavorite.setOnAction(e -> {
                 BuildInfo item = tableRow.getItem();
-                item.setFavorite(!item.isFavorite());
-                BuildDataManager.saveBuilds();
+                BuildDataManager.setFavorite(item, !item.isFavorite());
 
                 // TODO: I don't know of another way to force-refresh the
                 // table-row without making the whole BuildInfo class an
@@ -416,7 +485,6 @@ public final class MainController {
 
                     buildTableView.getItems().remove(item);
                     BuildDataManager.deleteBuild(item);
-                    BuildDataManager.saveBuilds();
 
                     mainReference.updateStatusBarText();
                 }
@@ -494,8 +562,8 @@ public final class MainController {
             if (currentlyFilteredItem.equals("")) {
                 state = CubedState.FAVORITES;
             } else {
-                boolean cubed = cellData.getValue().getBuildGear()
-                        .isCubed(currentlyFilteredItem);
+                boolean cubed = BuildDataManager.isCubed(cellData.getValue(),
+                        currentlyFilteredItem);
 
                 if (cubed) {
                     state = CubedState.YES;
@@ -642,7 +710,18 @@ public final class MainController {
         updateBuildsButton.setMaxWidth(Double.MAX_VALUE);
         updateBuildsButton.setPrefHeight(30);
 
-        updateBuildsButton.setOnAction(new FetchBuildsHandler(updateBuildsButton));
+        FetchBuildsHandler fetchBuildsHandler = new FetchBuildsHandler(updateBuildsButton);
+        updateBuildsButton.setOnAction(fetchBuildsHandler);
+
+        // Right-clicking the button offers the quick refresh
+        MenuItem quickRefresh = new MenuItem("Quick refresh");
+        MenuItem fullUpdate = new MenuItem("Full update");
+
+        quickRefresh.setOnAction(e -> fetchBuildsHandler.startUpdate(true));
+        fullUpdate.setOnAction(e -> fetchBuildsHandler.startUpdate(false));
+
+        updateBuildsButton.setContextMenu(new ContextMenu(quickRefresh, fullUpdate));
+
         showFavoriteBuildsButton.setOnAction(e -> {
 
             itemFilterListView.getSelectionModel().clearSelection();
@@ -707,6 +786,10 @@ public final class MainController {
                 Scraper scraper = (Scraper) button.getUserData();
 
                 scraper.setOnCancelled(f -> {
+                    // Keep whatever was downloaded before the cancel
+                    BuildDataManager.saveBuilds();
+                    storeConcurrency(scraper);
+
                     mainReference.updateStatusBarText();
                     statusBarProgressBar.hide();
 
@@ -718,6 +801,23 @@ public final class MainController {
                 return;
             }
 
+            startUpdate(false);
+        }
+
+        /**
+         * Asks the user to confirm, then starts an update unless one is
+         * already running.
+         * 
+         * @param quickRefresh
+         *            If true, scores are stored as soon as the listing pages
+         *            are in and only new and changed builds are downloaded
+         *            after that, see {@link Scraper#Scraper(Set, boolean)}.
+         */
+        public void startUpdate(boolean quickRefresh) {
+            if (button.getUserData() != null) {
+                return;
+            }
+
             Alert confirmFetch = new Alert(AlertType.CONFIRMATION);
             confirmFetch.initOwner(mainReference.getPrimaryStage());
             confirmFetch.setHeaderText(null);
@@ -736,7 +836,8 @@ public final class MainController {
 
             toggleUpdateButton();
 
-            Scraper scraper = new Scraper(BuildDataManager.getBuildInfoSet());
+            Scraper scraper = new Scraper(BuildDataManager.getBuildInfoSet(),
+                    quickRefresh);
             button.setUserData(scraper);
 
             statusBarProgressBar.setTask(scraper);
@@ -764,6 +865,7 @@ public final class MainController {
 
                 BuildDataManager.updateLastUpdatedDate();
                 BuildDataManager.saveBuilds();
+                storeConcurrency(scraper);
 
                 mainReference.updateStatusBarText();
                 statusBarProgressBar.hide();
@@ -773,6 +875,8 @@ public final class MainController {
             });
 
             scraper.setOnFailed(f -> {
+                storeConcurrency(scraper);
+
                 ExceptionDialog exceptionDialog = new ExceptionDialog(AlertType.ERROR,
                         "Something broke when parsing the html data. "
                                 + "See the details for more information.",
@@ -785,6 +889,32 @@ public final class MainController {
 
         }
 
+        // ----------------------------------------------
+        //
+        // Private API
+        //
+        // ----------------------------------------------
+
+        /**
+         * Stores the download concurrency the given update settled on, so the
+         * next update starts from there.
+         */
+        private void storeConcurrency(Scraper scraper) {
+            int concurrency = scraper.getConcurrency();
+
+            if (concurrency == 0) {
+                return;
+            }
+
+            try {
+                UserPreferences.set(PrefKey.DOWNLOAD_CONCURRENCY, concurrency);
+            } catch (RuntimeException e) {
+                // Not worth failing over, the next update starts where this
+                // one did
+                e.printStackTrace();
+            }
+        }
+
     }
 
     /**
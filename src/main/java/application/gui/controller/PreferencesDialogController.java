@@ -43,6 +43,8 @@ public class PreferencesDialogController {
     @FXML
     private CheckBox checkForUpdatesCheckBox;
     @FXML
+    private CheckBox stopAtUpToDatePagesCheckBox;
+    @FXML
     private TextField fetchUrlField;
     @FXML
     private Spinner<Integer> pageCountSpinner;
@@ -67,6 +69,7 @@ public class PreferencesDialogController {
     private ChangeListener<Integer> pageCountSaveStateListener;
 
     private static final int MAX_ADDITONAL_URLS = 5;
+    private static final int MAX_PAGE_COUNT = 20;
 
     // ----------------------------------------------
     //
@@ -90,14 +93,17 @@ public class PreferencesDialogController {
         pageCountSpinner.getValueFactory().valueProperty()
                 .addListener(pageCountSaveStateListener);
 
-        checkForUpdatesCheckBox.selectedProperty()
-                .addListener(new ChangeListener<Boolean>() {
-                    @Override
-                    public void changed(ObservableValue<? extends Boolean> observable,
-                            Boolean oldValue, Boolean newValue) {
-                        disableSaving(false);
-                    }
-                });
+        ChangeListener<Boolean> checkBoxSaveStateListener = new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observable,
+                    Boolean oldValue, Boolean newValue) {
+                disableSaving(false);
+            }
+        };
+
+        checkForUpdatesCheckBox.selectedProperty().addListener(checkBoxSaveStateListener);
+        stopAtUpToDatePagesCheckBox.selectedProperty()
+                .addListener(checkBoxSaveStateListener);
     }
 
     // ----------------------------------------------
@@ -115,6 +121,9 @@ public class PreferencesDialogController {
         checkForUpdatesCheckBox
                 .setSelected(UserPreferences.getBoolean(PrefKey.CHECK_FOR_UPDATES));
 
+        stopAtUpToDatePagesCheckBox.setSelected(UserPreferences
+                .getBooleanOrDefault(PrefKey.STOP_AT_UP_TO_DATE_PAGES, false));
+
         loadAdditionalFetchUrls();
         disableSaving(true);
     }
@@ -183,6 +192,9 @@ public class PreferencesDialogController {
         UserPreferences.set(PrefKey.CHECK_FOR_UPDATES,
                 checkForUpdatesCheckBox.isSelected());
 
+        UserPreferences.set(PrefKey.STOP_AT_UP_TO_DATE_PAGES,
+                stopAtUpToDatePagesCheckBox.isSelected());
+
         UserPreferences.set(PrefKey.BUILDS_URL, fetchUrlField.getText());
         UserPreferences.set(PrefKey.PAGE_COUNT, pageCountSpinner.getValue());
 
@@ -324,7 +336,7 @@ public class PreferencesDialogController {
         HBox.setHgrow(spinnerVBox, Priority.ALWAYS);
 
         Label pageCountLabel = new Label("Page Count");
-        Spinner<Integer> pageCountSpinner = new Spinner<>(1, 3, 1);
+        Spinner<Integer> pageCountSpinner = new Spinner<>(1, MAX_PAGE_COUNT, 1);
         spinnerVBox.getChildren().addAll(pageCountLabel, pageCountSpinner);
 
         // -----------------------------------
@@ -0,0 +1,74 @@
+package application.model;
+
+/**
+ * The details read from a single build page. This is what the download
+ * workers hand back, it's kept small so finished results don't hold on to any
+ * page data.
+ */
+public final class BuildDetails {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final String buildName;
+    private final String author;
+    private final String patch;
+    private final BuildGear buildGear;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    public BuildDetails(String buildName, String author, String patch,
+            BuildGear buildGear) {
+
+        this.buildName = buildName;
+        this.author = author;
+        this.patch = patch;
+        this.buildGear = buildGear;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Populates the given {@link BuildInfo} with these details.
+     */
+    public void applyTo(BuildInfo buildInfo) {
+        buildInfo.setBuildName(buildName);
+        buildInfo.setAuthor(author);
+        buildInfo.setPatch(patch);
+        buildInfo.setBuildGear(buildGear);
+    }
+
+    // ----------------------------------------------
+    //
+    // Getters
+    //
+    // ----------------------------------------------
+
+    public String getBuildName() {
+        return buildName;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getPatch() {
+        return patch;
+    }
+
+    public BuildGear getBuildGear() {
+        return buildGear;
+    }
+
+}
@@ -3,10 +3,25 @@ package application.model;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
+/**
+ * The items of a single build, by {@link GearSlot}.
+ * 
+ * <p>
+ * Items are stored as {@link ItemDictionary} ids, packed into a single array
+ * with the items of each slot following the previous one. The serialized form
+ * is still the original one, a set of names per worn slot and a name per cube
+ * slot, so existing save files keep working.
+ * </p>
+ */
 public class BuildGear implements Serializable {
 
     // ----------------------------------------------
@@ -17,22 +32,26 @@ public class BuildGear implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    public final Set<String> headSlot = new HashSet<>(3);
-    public final Set<String> shoulderSlot = new HashSet<>(3);
-    public final Set<String> amuletSlot = new HashSet<>(3);
-    public final Set<String> torsoSlot = new HashSet<>(3);
-    public final Set<String> wristSlot = new HashSet<>(3);
-    public final Set<String> handSlot = new HashSet<>(3);
-    public final Set<String> waistSlot = new HashSet<>(3);
-    public final Set<String> legSlot = new HashSet<>(3);
-    public final Set<String> feetSlot = new HashSet<>(3);
-    public final Set<String> ringSlot = new HashSet<>(3);
-    public final Set<String> weaponSlot = new HashSet<>(3);
-    public final Set<String> offhandSlot = new HashSet<>(3);
-
-    public String cubeWeapon;
-    public String cubeArmor;
-    public String cubeJewelry;
+    private static final int SLOT_COUNT = GearSlot.values().length;
+
+    /**
+     * The serialized field of each {@link GearSlot}, in the same order.
+     */
+    private static final String[] SERIALIZED_NAMES = { "headSlot", "shoulderSlot",
+            "amuletSlot", "torsoSlot", "wristSlot", "handSlot", "waistSlot", "legSlot",
+            "feetSlot", "ringSlot", "weaponSlot", "offhandSlot", "cubeWeapon",
+            "cubeArmor", "cubeJewelry" };
+
+    private static final ObjectStreamField[] serialPersistentFields = createSerialFields();
+
+    private static final int[] NO_ITEMS = new int[0];
+
+    private transient int[] itemIds = NO_ITEMS;
+
+    /**
+     * The index in {@link #itemIds} where each slot ends.
+     */
+    private transient short[] slotEnds = new short[SLOT_COUNT];
 
     // ----------------------------------------------
     //
@@ -53,29 +72,158 @@ public class BuildGear implements Serializable {
      * Checks if the given item is one of the cubed items.
      */
     public boolean isCubed(String targetItem) {
+        int targetId = ItemDictionary.getId(targetItem);
 
-//        System.out.println(cubeWeapon);
-//        System.out.println(cubeArmor);
-//        System.out.println(cubeJewelry);
-//        System.out.println("--");
-//        System.out.println(targetItem);
-//        System.out.println("\n\n");
-        
-        if (cubeArmor.equalsIgnoreCase(targetItem)) {
-            return true;
-        } else if (cubeWeapon.equalsIgnoreCase(targetItem)) {
-            return true;
-        } else if (cubeJewelry.equalsIgnoreCase(targetItem)) {
-            return true;
+        if (targetId == ItemDictionary.NO_ITEM) {
+            return false;
         }
 
-        return false;
+        return hasItem(GearSlot.CUBE_WEAPON, targetId)
+                || hasItem(GearSlot.CUBE_ARMOR, targetId)
+                || hasItem(GearSlot.CUBE_JEWELRY, targetId);
+    }
+
+    /**
+     * Returns the items in the given slot. A cube slot holds at most one item.
+     * The returned set can't be modified, use
+     * {@link #setItems(GearSlot, Collection)} instead.
+     */
+    public Set<String> getItems(GearSlot gearSlot) {
+        int start = getSlotStart(gearSlot);
+        int end = slotEnds[gearSlot.ordinal()];
+
+        if (start == end) {
+            return Collections.emptySet();
+        }
+
+        Set<String> items = new HashSet<>((end - start) * 2);
+        for (int i = start; i < end; i++) {
+            items.add(ItemDictionary.getName(itemIds[i]));
+        }
+
+        return Collections.unmodifiableSet(items);
+    }
+
+    /**
+     * Returns the {@link ItemDictionary} ids of the items in the given slot.
+     */
+    public int[] getItemIds(GearSlot gearSlot) {
+        return Arrays.copyOfRange(itemIds, getSlotStart(gearSlot),
+                slotEnds[gearSlot.ordinal()]);
+    }
+
+    /**
+     * Replaces the items in the given slot. Empty names and duplicates are
+     * skipped, and a cube slot only keeps the first item.
+     */
+    public void setItems(GearSlot gearSlot, Collection<String> items) {
+        Set<Integer> newIds = new LinkedHashSet<>();
+
+        for (String item : items) {
+            if (item != null && !item.isEmpty()) {
+                newIds.add(ItemDictionary.intern(item));
+            }
+
+            if (gearSlot.isCubeSlot() && !newIds.isEmpty()) {
+                break;
+            }
+        }
+
+        int start = getSlotStart(gearSlot);
+        int end = slotEnds[gearSlot.ordinal()];
+        int sizeChange = newIds.size() - (end - start);
+
+        int[] packedIds = new int[itemIds.length + sizeChange];
+        System.arraycopy(itemIds, 0, packedIds, 0, start);
+
+        int i = start;
+        for (int id : newIds) {
+            packedIds[i++] = id;
+        }
+
+        System.arraycopy(itemIds, end, packedIds, i, itemIds.length - end);
+
+        for (int slot = gearSlot.ordinal(); slot < SLOT_COUNT; slot++) {
+            slotEnds[slot] += sizeChange;
+        }
+
+        itemIds = packedIds;
+    }
+
+    public String getCubeWeapon() {
+        return getCubedItem(GearSlot.CUBE_WEAPON);
+    }
+
+    public void setCubeWeapon(String cubeWeapon) {
+        setItems(GearSlot.CUBE_WEAPON, Collections.singleton(cubeWeapon));
+    }
+
+    public String getCubeArmor() {
+        return getCubedItem(GearSlot.CUBE_ARMOR);
+    }
+
+    public void setCubeArmor(String cubeArmor) {
+        setItems(GearSlot.CUBE_ARMOR, Collections.singleton(cubeArmor));
+    }
+
+    public String getCubeJewelry() {
+        return getCubedItem(GearSlot.CUBE_JEWELRY);
+    }
+
+    public void setCubeJewelry(String cubeJewelry) {
+        setItems(GearSlot.CUBE_JEWELRY, Collections.singleton(cubeJewelry));
     }
 
     @Override
     public String toString() {
         return String.format("Cube weapon: %s\nCube armor: %s\nCube jewelry: %s",
-                cubeWeapon, cubeArmor, cubeJewelry);
+                getCubeWeapon(), getCubeArmor(), getCubeJewelry());
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private int getSlotStart(GearSlot gearSlot) {
+        return (gearSlot.ordinal() == 0) ? 0 : slotEnds[gearSlot.ordinal() - 1];
+    }
+
+    private boolean hasItem(GearSlot gearSlot, int itemId) {
+        for (int i = getSlotStart(gearSlot); i < slotEnds[gearSlot.ordinal()]; i++) {
+            if (itemIds[i] == itemId) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the item in the given cube slot, or an empty string if there is
+     * none.
+     */
+    private String getCubedItem(GearSlot gearSlot) {
+        int start = getSlotStart(gearSlot);
+
+        if (start == slotEnds[gearSlot.ordinal()]) {
+            return "";
+        }
+
+        return ItemDictionary.getName(itemIds[start]);
+    }
+
+    private static ObjectStreamField[] createSerialFields() {
+        ObjectStreamField[] fields = new ObjectStreamField[SLOT_COUNT];
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            Class<?> type = gearSlot.isCubeSlot() ? String.class : Set.class;
+            fields[gearSlot.ordinal()] = new ObjectStreamField(
+                    SERIALIZED_NAMES[gearSlot.ordinal()], type);
+        }
+
+        return fields;
     }
 
     // ----------------------------------------------
@@ -85,12 +233,40 @@ public class BuildGear implements Serializable {
     // ----------------------------------------------
 
     private void writeObject(ObjectOutputStream s) throws IOException {
-        s.defaultWriteObject();
+        ObjectOutputStream.PutField fields = s.putFields();
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            String name = SERIALIZED_NAMES[gearSlot.ordinal()];
+
+            if (gearSlot.isCubeSlot()) {
+                fields.put(name, getCubedItem(gearSlot));
+            } else {
+                fields.put(name, new HashSet<>(getItems(gearSlot)));
+            }
+        }
+
+        s.writeFields();
     }
 
+    @SuppressWarnings("unchecked")
     private void readObject(ObjectInputStream s)
             throws ClassNotFoundException, IOException {
-        s.defaultReadObject();
+
+        ObjectInputStream.GetField fields = s.readFields();
+
+        itemIds = NO_ITEMS;
+        slotEnds = new short[SLOT_COUNT];
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            String name = SERIALIZED_NAMES[gearSlot.ordinal()];
+
+            if (gearSlot.isCubeSlot()) {
+                setItems(gearSlot, Collections.singleton((String) fields.get(name, "")));
+            } else {
+                Set<String> items = (Set<String>) fields.get(name, null);
+                setItems(gearSlot, (items == null) ? Collections.emptySet() : items);
+            }
+        }
     }
 
 }
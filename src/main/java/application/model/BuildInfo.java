@@ -39,6 +39,9 @@ public class BuildInfo implements Serializable {
 
     private BuildGear buildGear;
 
+    // Set until the fields of a stored build have been loaded
+    private transient volatile LazyFields lazyFields;
+
     // ----------------------------------------------
     //
     // Constructor
@@ -52,7 +55,7 @@ public class BuildInfo implements Serializable {
 
         try {
 
-            urlString = urlString.replaceFirst("^http", "https");
+            urlString = urlString.replaceFirst("^http:", "https:");
             this.buildUrl = new URL(urlString);
 
         } catch (MalformedURLException e) {
@@ -63,6 +66,22 @@ public class BuildInfo implements Serializable {
         this.buildLastUpdated = buildLastUpdated;
     }
 
+    /**
+     * Creates a build from stored data. Only the fields that are cheap to read
+     * are set right away, the rest are loaded from the given
+     * {@link LazyFields} the first time any of them is used.
+     */
+    public BuildInfo(D3Class d3Class, int buildUrlId, long buildLastUpdated, int score,
+            String author, String patch, LazyFields lazyFields) {
+        this.d3Class = d3Class;
+        this.buildUrlId = buildUrlId;
+        this.buildLastUpdated = buildLastUpdated;
+        this.buildScore = score;
+        this.author = author;
+        this.patch = patch;
+        this.lazyFields = lazyFields;
+    }
+
     public BuildInfo(D3Class d3Class, URL buildUrl) {
         this.d3Class = d3Class;
         this.buildUrl = buildUrl;
@@ -76,18 +95,69 @@ public class BuildInfo implements Serializable {
 
     @Override
     public String toString() {
+        materialize();
+
         return String.format(
                 "Name: %sAuthor: %s\nPatch: %s\nUpdated: %s\nScore: %d\nClass: %s\nURL: %s\n-----\nGear:\n%s",
                 buildName, author, patch, buildLastUpdated, buildScore, d3Class,
                 buildUrl.toString(), buildGear.toString());
     }
 
+    /**
+     * Returns a copy of this build with the given score. A stored build can
+     * be in use on any thread, so a new score is handed out as a new build
+     * instead of set on the stored one.
+     */
+    public BuildInfo withBuildScore(int buildScore) {
+        // Read first, once it's null the loaded fields are all set
+        LazyFields fields = lazyFields;
+
+        BuildInfo copy = new BuildInfo(d3Class, buildUrl);
+        copy.buildUrlId = buildUrlId;
+        copy.buildLastUpdated = buildLastUpdated;
+        copy.buildScore = buildScore;
+        copy.buildName = buildName;
+        copy.author = author;
+        copy.patch = patch;
+        copy.buildGear = buildGear;
+        copy.lazyFields = fields;
+        copy.setFavorite(isFavorite());
+
+        return copy;
+    }
+
     // ----------------------------------------------
     //
     // Private API
     //
     // ----------------------------------------------
 
+    /**
+     * Loads the fields of a stored build, if they haven't been loaded yet.
+     */
+    private void materialize() {
+        if (lazyFields == null) {
+            return;
+        }
+
+        synchronized (this) {
+            LazyFields fields = lazyFields;
+
+            if (fields == null) {
+                return;
+            }
+
+            URL url = fields.loadBuildUrl();
+            BuildDetails buildDetails = fields.loadDetails();
+
+            buildUrl = url;
+            buildName = buildDetails.getBuildName();
+            buildGear = buildDetails.getBuildGear();
+
+            lazyFields = null;
+        }
+    }
+
     /**
      * Extracts the unique ID from a given build URL.
      */
@@ -149,6 +219,7 @@ public class BuildInfo implements Serializable {
     // ----------------------------------------------
 
     private void writeObject(ObjectOutputStream s) throws IOException {
+        materialize();
         s.defaultWriteObject();
 
         s.writeBoolean(isFavoriteProperty.get());
@@ -214,18 +285,22 @@ public class BuildInfo implements Serializable {
     }
 
     public String getBuildName() {
+        materialize();
         return buildName;
     }
 
     public void setBuildName(String buildName) {
+        materialize();
         this.buildName = buildName;
     }
 
     public URL getBuildUrl() {
+        materialize();
         return buildUrl;
     }
 
     public void setBuildUrl(URL buildUrl) {
+        materialize();
         this.buildUrl = buildUrl;
     }
 
@@ -246,10 +321,12 @@ public class BuildInfo implements Serializable {
     }
 
     public BuildGear getBuildGear() {
+        materialize();
         return buildGear;
     }
 
     public void setBuildGear(BuildGear buildGear) {
+        materialize();
         this.buildGear = buildGear;
     }
 
@@ -269,4 +346,37 @@ public class BuildInfo implements Serializable {
         return buildLastUpdated;
     }
 
+    public int getBuildUrlId() {
+        return buildUrlId;
+    }
+
+    /**
+     * Returns where the remaining fields of a stored build are loaded from,
+     * or null if they're loaded already. Reading this never loads them.
+     */
+    public LazyFields getLazyFields() {
+        return lazyFields;
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner interface
+    //
+    // ----------------------------------------------
+
+    /**
+     * Loads the fields of a stored build that are only read on demand.
+     */
+    public interface LazyFields {
+
+        URL loadBuildUrl();
+
+        /**
+         * Returns the name and gear of the build. The author and patch are
+         * set when the build is created and aren't read from here.
+         */
+        BuildDetails loadDetails();
+
+    }
+
 }
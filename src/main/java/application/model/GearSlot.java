@@ -0,0 +1,49 @@
+package application.model;
+
+/**
+ * Defines all the slots an item can be found in, the twelve worn slots and
+ * the three Kanai's Cube slots.
+ */
+public enum GearSlot {
+
+    // @formatter:off
+    
+    HEAD(false),
+    SHOULDERS(false),
+    AMULET(false),
+    TORSO(false),
+    WRISTS(false),
+    HANDS(false),
+    WAIST(false),
+    LEGS(false),
+    FEET(false),
+    RINGS(false),
+    WEAPON(false),
+    OFFHAND(false),
+    
+    CUBE_WEAPON(true),
+    CUBE_ARMOR(true),
+    CUBE_JEWELRY(true);
+    
+    // @formatter:on
+
+    private final boolean CUBE_SLOT;
+
+    private GearSlot(boolean cubeSlot) {
+        this.CUBE_SLOT = cubeSlot;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns true if this is one of the Kanai's Cube slots.
+     */
+    public boolean isCubeSlot() {
+        return CUBE_SLOT;
+    }
+
+}
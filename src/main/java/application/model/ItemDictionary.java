@@ -0,0 +1,108 @@
+package application.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps item names to small ints, so builds can store their gear as ids
+ * instead of holding their own copies of every name.
+ * 
+ * <p>
+ * Names are matched case insensitively, the first spelling seen is the one
+ * that's kept. Ids are dense and start at 0, and are only valid for the
+ * lifetime of the application, never persist them.
+ * </p>
+ */
+public final class ItemDictionary {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returned by {@link #getId(String)} for items that have never been seen.
+     */
+    public static final int NO_ITEM = -1;
+
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    private ItemDictionary() {
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns the id of the given item, adding it to the dictionary if it's
+     * new.
+     * 
+     * @throws IllegalArgumentException
+     *             If the name is null or empty.
+     */
+    public static synchronized int intern(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Item name cannot be empty");
+        }
+
+        return ids.computeIfAbsent(toKey(name), key -> {
+            names.add(name);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Returns the id of the given item, or {@link #NO_ITEM} if it's not in
+     * the dictionary.
+     */
+    public static synchronized int getId(String name) {
+        if (name == null) {
+            return NO_ITEM;
+        }
+
+        return ids.getOrDefault(toKey(name), NO_ITEM);
+    }
+
+    /**
+     * Returns the name of the item with the given id.
+     * 
+     * @throws IndexOutOfBoundsException
+     *             If there's no item with the given id.
+     */
+    public static synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the number of items in the dictionary. All ids are lower than
+     * this.
+     */
+    public static synchronized int size() {
+        return names.size();
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private static String toKey(String name) {
+        return name.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+}
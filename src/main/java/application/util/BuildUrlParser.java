@@ -109,6 +109,17 @@ public class BuildUrlParser {
         return Collections.unmodifiableSet(classesToFetch);
     }
 
+    /**
+     * Returns the URL up to, but not including, the options.
+     */
+    public String getBaseUrl() {
+        if (!isValidUrl()) {
+            throw new IllegalStateException("The given URL is not valid");
+        }
+
+        return USER_URL.split("\\?")[0];
+    }
+
     /**
      * Returns parsed URL without the class param.
      * 
@@ -0,0 +1,216 @@
+package application.util;
+
+/**
+ * Limits the number of requests in flight, adjusting the limit at runtime
+ * with additive increase and multiplicative decrease (AIMD).
+ * 
+ * <p>
+ * Every request that completes while at least half the limit is in use, and
+ * whose latency stays close to the best latency seen so far, grows the limit
+ * by {@code 1 / limit}. That adds up to roughly one extra request per round
+ * of requests. A request that signals overload, like a timeout or a throttling
+ * response, halves the limit. Only requests started after the last back off
+ * can cause another one, so a burst of failures from the same round counts
+ * once.
+ * </p>
+ */
+public class ConcurrencyLimiter {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    /**
+     * How much slower than the baseline a request may be and still count as
+     * flat latency.
+     */
+    private static final double LATENCY_TOLERANCE = 1.5;
+
+    /**
+     * How quickly the baseline follows slower samples. Keeps a single lucky
+     * sample from pinning it forever.
+     */
+    private static final double BASELINE_DRIFT = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private long backoffEpoch;
+    private double baselineLatency = -1;
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    /**
+     * Creates a new limiter.
+     * 
+     * @param initialLimit
+     *            The limit to start from, clamped to the given bounds.
+     * 
+     * @throws IllegalArgumentException
+     *             If the bounds are not positive or the minimum is bigger
+     *             than the maximum.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid limits, min: " + minLimit + ", max: " + maxLimit);
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Waits until a request may start.
+     * 
+     * @return A {@link Permit} that must be completed once the request is
+     *         done.
+     */
+    public synchronized Permit acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+
+        inFlight++;
+        return new Permit(backoffEpoch, System.nanoTime());
+    }
+
+    /**
+     * Returns the current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    // ----------------------------------------------
+    //
+    // Package-private API
+    //
+    // ----------------------------------------------
+
+    synchronized void onSuccess(Permit permit, long latencyNanos) {
+        // Only grow when the limit is actually being used, otherwise it would
+        // creep up while we're not sending much at all
+        boolean saturated = inFlight * 2 >= getLimit();
+        release();
+
+        if (baselineLatency < 0 || latencyNanos < baselineLatency) {
+            baselineLatency = latencyNanos;
+        } else {
+            baselineLatency += (latencyNanos - baselineLatency) * BASELINE_DRIFT;
+        }
+
+        if (saturated && latencyNanos <= baselineLatency * LATENCY_TOLERANCE) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    synchronized void onOverload(Permit permit) {
+        release();
+
+        if (permit.epoch == backoffEpoch) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            backoffEpoch++;
+        }
+    }
+
+    synchronized void onIgnore(Permit permit) {
+        release();
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes
+    //
+    // ----------------------------------------------
+
+    /**
+     * A single request in flight. Exactly one of the completion methods should
+     * be called, any call after the first is ignored.
+     */
+    public class Permit {
+
+        private final long epoch;
+        private final long startTime;
+
+        private boolean completed;
+
+        private Permit(long epoch, long startTime) {
+            this.epoch = epoch;
+            this.startTime = startTime;
+        }
+
+        /**
+         * The request succeeded, its latency is used to decide whether to grow
+         * the limit.
+         */
+        public void success() {
+            if (complete()) {
+                onSuccess(this, System.nanoTime() - startTime);
+            }
+        }
+
+        /**
+         * The request failed in a way that means the server is overloaded,
+         * the limit backs off.
+         */
+        public void overload() {
+            if (complete()) {
+                onOverload(this);
+            }
+        }
+
+        /**
+         * The request failed for a reason that says nothing about the load,
+         * the limit is left alone.
+         */
+        public void ignore() {
+            if (complete()) {
+                onIgnore(this);
+            }
+        }
+
+        private synchronized boolean complete() {
+            if (completed) {
+                return false;
+            }
+
+            completed = true;
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package application.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+import application.model.D3Class;
+
+/**
+ * Turns the configured builds URLs into the smallest set of listings to fetch.
+ * 
+ * <p>
+ * Every URL is canonicalized from its {@link BuildUrlParser#getOptions()}:
+ * the class and page options are taken out and the rest are sorted by name.
+ * URLs that end up the same only differed in what classes or how many pages
+ * to fetch, so they're merged. Each class of a merged URL is listed once,
+ * with the largest page count any of the URLs asked for.
+ * </p>
+ * 
+ * <p>
+ * Using the URLs:
+ * 
+ * <pre>
+ * http://www.diablofans.com/builds?filter-build=7&filter-class=2      (3 pages)
+ * http://www.diablofans.com/builds?filter-class=6&filter-build=7      (1 page)
+ * </pre>
+ * 
+ * Would plan 3 pages of Barbarian builds and 1 page of Demon Hunter builds.
+ * </p>
+ */
+public class FetchPlanner {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final String CLASS_OPTION = "filter-class";
+    private static final String PAGE_OPTION = "page";
+
+    /**
+     * The page count of each class, by canonical URL in the order they were
+     * first added.
+     */
+    private final Map<String, Map<D3Class, Integer>> pageCounts = new LinkedHashMap<>();
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Adds a builds URL to the plan.
+     * 
+     * @param url
+     *            The builds URL, must be valid according to
+     *            {@link BuildUrlParser#isValidUrl()}.
+     * @param pageCount
+     *            The amount of pages to fetch for each class in the URL.
+     */
+    public void add(String url, int pageCount) {
+        BuildUrlParser buildUrlParser = new BuildUrlParser(url);
+
+        Map<D3Class, Integer> classPageCounts = pageCounts.computeIfAbsent(
+                getCanonicalUrl(buildUrlParser), key -> new EnumMap<>(D3Class.class));
+
+        Set<Integer> classesToFetch = buildUrlParser.extractClassesToFetch();
+
+        for (D3Class d3Class : D3Class.values()) {
+            if (classesToFetch.contains(d3Class.getClassFilterId())) {
+                classPageCounts.merge(d3Class, pageCount, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Returns the listings to fetch, one for each class of each distinct URL.
+     */
+    public List<Listing> plan() {
+        List<Listing> listings = new ArrayList<>();
+
+        for (Map.Entry<String, Map<D3Class, Integer>> urlEntry : pageCounts.entrySet()) {
+            for (Map.Entry<D3Class, Integer> classEntry : urlEntry.getValue()
+                    .entrySet()) {
+
+                listings.add(new Listing(urlEntry.getKey(), classEntry.getKey(),
+                        classEntry.getValue()));
+            }
+        }
+
+        return Collections.unmodifiableList(listings);
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Returns the given URL without the class and page options, and with the
+     * remaining options sorted by name.
+     */
+    private static String getCanonicalUrl(BuildUrlParser buildUrlParser) {
+        Map<String, String> options = new TreeMap<>(buildUrlParser.getOptions());
+        options.remove(CLASS_OPTION);
+        options.remove(PAGE_OPTION);
+
+        StringJoiner joiner = new StringJoiner("&");
+        options.forEach((key, value) -> joiner.add(key + "=" + value));
+
+        return buildUrlParser.getBaseUrl() + "?" + joiner;
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes
+    //
+    // ----------------------------------------------
+
+    /**
+     * The pages of a single class to fetch from a single URL.
+     */
+    public static final class Listing {
+
+        private final String fetchUrl;
+        private final D3Class d3Class;
+        private final int pageCount;
+
+        private Listing(String fetchUrl, D3Class d3Class, int pageCount) {
+            this.fetchUrl = fetchUrl;
+            this.d3Class = d3Class;
+            this.pageCount = pageCount;
+        }
+
+        /**
+         * Returns the URL of the given page, counting from 1.
+         */
+        public String getPageUrl(int page) {
+            String pageUrl = fetchUrl;
+
+            if (!pageUrl.endsWith("?")) {
+                pageUrl += "&";
+            }
+
+            pageUrl += CLASS_OPTION + "=" + d3Class.getClassFilterId();
+
+            if (page > 1) {
+                pageUrl += "&" + PAGE_OPTION + "=" + page;
+            }
+
+            return pageUrl;
+        }
+
+        public D3Class getD3Class() {
+            return d3Class;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,426 @@
+package application.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * A minimal streaming HTML scanner. Instead of building a document tree it
+ * reports start tags, end tags and text to a {@link Handler} as they are read,
+ * and stops as soon as the handler says it's done.
+ * 
+ * <p>
+ * Only the {@code id} and {@code class} attributes are reported, and text is
+ * only collected while the handler asks for it. Comments, doctypes and the
+ * contents of {@code script} and {@code style} elements are skipped.
+ * </p>
+ */
+public class HtmlTagScanner {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final Handler handler;
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder textBuilder = new StringBuilder();
+
+    // ----------------------------------------------
+    //
+    // Constructor
+    //
+    // ----------------------------------------------
+
+    /**
+     * Creates a new scanner reading from the given {@link Reader}.
+     */
+    public HtmlTagScanner(Reader reader, Handler handler) {
+        this.reader = reader;
+        this.handler = handler;
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Scans the HTML until the end of the stream is reached or the handler
+     * reports that it's done. The reader is not closed.
+     */
+    public void scan() throws IOException {
+        int c = read();
+
+        while (c != EOF && !handler.isDone()) {
+            if (c == '<') {
+                c = readMarkup();
+            } else {
+                c = readText(c);
+            }
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Reads text until the next tag starts and hands it to the handler if it
+     * wants it.
+     * 
+     * @return The character that ended the text.
+     */
+    private int readText(int c) throws IOException {
+        boolean collect = handler.wantsText();
+        textBuilder.setLength(0);
+
+        while (c != EOF && c != '<') {
+            if (collect) {
+                textBuilder.append((char) c);
+            }
+
+            c = read();
+        }
+
+        if (collect && textBuilder.length() > 0) {
+            String text = textBuilder.toString();
+
+            if (text.indexOf('&') != -1) {
+                text = Parser.unescapeEntities(text, false);
+            }
+
+            handler.text(text);
+        }
+
+        return c;
+    }
+
+    /**
+     * Reads whatever follows a '<', which can be a tag, a comment or just a
+     * stray character.
+     * 
+     * @return The next unread character.
+     */
+    private int readMarkup() throws IOException {
+        int c = read();
+
+        if (c == '!' || c == '?') {
+            return skipDeclaration(c);
+        }
+
+        if (c == '/') {
+            c = read();
+
+            if (!isLetter(c)) {
+                return skipPast('>');
+            }
+
+            StringBuilder tagName = new StringBuilder();
+            c = readName(c, tagName);
+
+            while (c != EOF && c != '>') {
+                c = read();
+            }
+
+            handler.endTag(tagName.toString().toLowerCase(Locale.ENGLISH));
+            return read();
+        }
+
+        if (!isLetter(c)) {
+            // Not a tag after all, treat it as text
+            if (handler.wantsText()) {
+                handler.text("<");
+            }
+
+            return c;
+        }
+
+        StringBuilder tagNameBuilder = new StringBuilder();
+        c = readName(c, tagNameBuilder);
+        String tagName = tagNameBuilder.toString().toLowerCase(Locale.ENGLISH);
+
+        String id = null;
+        String classNames = null;
+        boolean selfClosing = false;
+
+        StringBuilder attributeName = new StringBuilder();
+        StringBuilder attributeValue = new StringBuilder();
+
+        while (c != EOF && c != '>') {
+            if (c == '/') {
+                selfClosing = true;
+                c = read();
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                c = read();
+                continue;
+            }
+
+            selfClosing = false;
+
+            attributeName.setLength(0);
+            attributeValue.setLength(0);
+
+            while (c != EOF && c != '=' && c != '>' && c != '/'
+                    && !Character.isWhitespace(c)) {
+                attributeName.append((char) c);
+                c = read();
+            }
+
+            while (Character.isWhitespace(c)) {
+                c = read();
+            }
+
+            if (c == '=') {
+                c = readAttributeValue(attributeValue);
+            }
+
+            String name = attributeName.toString().toLowerCase(Locale.ENGLISH);
+
+            if (name.equals("id")) {
+                id = decode(attributeValue.toString());
+            } else if (name.equals("class")) {
+                classNames = decode(attributeValue.toString());
+            }
+        }
+
+        handler.startTag(tagName, id, classNames, selfClosing);
+
+        if (!selfClosing && (tagName.equals("script") || tagName.equals("style"))) {
+            int next = skipRawText(tagName);
+            handler.endTag(tagName);
+
+            return next;
+        }
+
+        return read();
+    }
+
+    /**
+     * Reads an attribute value, quoted or not, into the given builder.
+     * 
+     * @return The character following the value.
+     */
+    private int readAttributeValue(StringBuilder value) throws IOException {
+        int c = read();
+
+        while (Character.isWhitespace(c)) {
+            c = read();
+        }
+
+        if (c == '"' || c == '\'') {
+            int quote = c;
+            c = read();
+
+            while (c != EOF && c != quote) {
+                value.append((char) c);
+                c = read();
+            }
+
+            return read();
+        }
+
+        while (c != EOF && c != '>' && !Character.isWhitespace(c)) {
+            value.append((char) c);
+            c = read();
+        }
+
+        return c;
+    }
+
+    /**
+     * Reads a tag name into the given builder.
+     * 
+     * @return The character following the name.
+     */
+    private int readName(int c, StringBuilder name) throws IOException {
+        while (c != EOF && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+            name.append((char) c);
+            c = read();
+        }
+
+        return c;
+    }
+
+    /**
+     * Skips a comment, doctype or processing instruction.
+     * 
+     * @return The next unread character.
+     */
+    private int skipDeclaration(int c) throws IOException {
+        if (c == '!') {
+            c = read();
+
+            if (c == '-') {
+                c = read();
+
+                if (c == '-') {
+                    return skipComment();
+                }
+            }
+        }
+
+        return skipPast('>');
+    }
+
+    /**
+     * Skips the rest of a comment.
+     * 
+     * @return The next unread character.
+     */
+    private int skipComment() throws IOException {
+        int dashes = 0;
+        int c = read();
+
+        while (c != EOF) {
+            if (c == '>' && dashes >= 2) {
+                return read();
+            }
+
+            dashes = (c == '-') ? dashes + 1 : 0;
+            c = read();
+        }
+
+        return c;
+    }
+
+    /**
+     * Skips the contents of a raw text element, up to and including its end
+     * tag.
+     * 
+     * @return The next unread character.
+     */
+    private int skipRawText(String tagName) throws IOException {
+        String endTag = "</" + tagName;
+        int matched = 0;
+
+        int c = read();
+
+        while (c != EOF) {
+            if (Character.toLowerCase(c) == endTag.charAt(matched)) {
+                matched++;
+
+                if (matched == endTag.length()) {
+                    return skipPast('>');
+                }
+            } else {
+                matched = (c == '<') ? 1 : 0;
+            }
+
+            c = read();
+        }
+
+        return c;
+    }
+
+    /**
+     * Skips everything up to and including the given character.
+     * 
+     * @return The next unread character.
+     */
+    private int skipPast(char target) throws IOException {
+        int c = read();
+
+        while (c != EOF && c != target) {
+            c = read();
+        }
+
+        return (c == EOF) ? EOF : read();
+    }
+
+    /**
+     * Reads the next character from the internal buffer, filling it from the
+     * reader when needed.
+     */
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+
+        return buffer[position++];
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('&') == -1) {
+            return value;
+        }
+
+        return Parser.unescapeEntities(value, true);
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner interface
+    //
+    // ----------------------------------------------
+
+    /**
+     * Receives the events of a {@link HtmlTagScanner}.
+     */
+    public interface Handler {
+
+        /**
+         * Called for every start tag.
+         * 
+         * @param tagName
+         *            The lower case name of the tag.
+         * @param id
+         *            The id attribute, or null if there is none.
+         * @param classNames
+         *            The class attribute, or null if there is none.
+         * @param selfClosing
+         *            true if the tag was closed with "/&gt;".
+         */
+        void startTag(String tagName, String id, String classNames, boolean selfClosing);
+
+        /**
+         * Called for every end tag, with the lower case name of the tag.
+         */
+        void endTag(String tagName);
+
+        /**
+         * Called with a run of text, entities already decoded. Only called
+         * while {@link #wantsText()} returns true.
+         */
+        void text(String text);
+
+        /**
+         * Returns true if the handler currently wants to receive text.
+         */
+        boolean wantsText();
+
+        /**
+         * Returns true once the handler has everything it needs, which stops
+         * the scan.
+         */
+        boolean isDone();
+
+    }
+
+}
@@ -0,0 +1,284 @@
+package application.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import application.config.UserPreferences;
+import application.config.UserPreferences.PrefKey;
+
+/**
+ * Shared HTTP layer, every download in the application goes through here.
+ * 
+ * <p>
+ * Connections are kept alive and pooled by the JDK, the pool is sized so it
+ * can hold on to one idle connection for every request we allow against a
+ * single host. Responses are requested compressed and decoded transparently,
+ * and every stream is drained on close so its connection can go back into
+ * the pool.
+ * </p>
+ */
+public class HttpFetcher {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10_000;
+    private static final int DEFAULT_READ_TIMEOUT = 30_000;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+
+    /**
+     * How much of an unread response body we're willing to read just to keep
+     * the connection alive. Anything bigger is cheaper to reconnect for.
+     */
+    private static final int MAX_DRAIN_BYTES = 256 * 1024;
+
+    private static final int MAX_CONNECTIONS_PER_HOST = UserPreferences
+            .getIntegerOrDefault(PrefKey.MAX_CONNECTIONS_PER_HOST,
+                    DEFAULT_MAX_CONNECTIONS_PER_HOST);
+
+    private static final ConcurrentMap<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
+    // ----------------------------------------------
+    //
+    // Static block
+    //
+    // ----------------------------------------------
+
+    static {
+        // The JDK only keeps 5 idle connections per host by default, which is
+        // fewer than we run in parallel. Has to be set before the first
+        // connection is made.
+        System.setProperty("http.keepAlive", "true");
+
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections",
+                    String.valueOf(MAX_CONNECTIONS_PER_HOST));
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Opens a stream to the given {@link URL}. The stream is already decoded
+     * if the server sent it compressed.
+     * 
+     * <p>
+     * The caller holds one of the host's connection slots until the stream is
+     * closed, so it must always be closed.
+     * </p>
+     * 
+     * @throws HttpStatusException
+     *             If the server responds with an error status.
+     * @throws IOException
+     *             If the connection fails or times out.
+     */
+    public static InputStream openStream(URL url) throws IOException {
+        Semaphore hostPermits = HOST_PERMITS.computeIfAbsent(
+                url.getHost().toLowerCase(Locale.ENGLISH),
+                host -> new Semaphore(MAX_CONNECTIONS_PER_HOST, true));
+
+        try {
+            hostPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+
+        PooledStream rawStream;
+
+        try {
+            rawStream = openConnection(url, hostPermits);
+        } catch (IOException | RuntimeException e) {
+            hostPermits.release();
+            throw e;
+        }
+
+        // From here on the stream owns the slot and returns it when closed
+        try {
+            return decode(rawStream, rawStream.contentEncoding);
+        } catch (IOException e) {
+            rawStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the most requests allowed against a single host at once.
+     */
+    public static int getMaxConnectionsPerHost() {
+        return MAX_CONNECTIONS_PER_HOST;
+    }
+
+    /**
+     * Downloads the full, decoded body of the given {@link URL}.
+     * 
+     * @see #openStream(URL)
+     */
+    public static byte[] fetchBytes(URL url) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[8192];
+
+        try (InputStream inputStream = openStream(url)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+
+        return body.toByteArray();
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Connects to the given {@link URL} and returns the raw, still encoded,
+     * response stream.
+     */
+    private static PooledStream openConnection(URL url, Semaphore hostPermits)
+            throws IOException {
+
+        URLConnection connection = url.openConnection();
+
+        connection.setConnectTimeout(UserPreferences
+                .getIntegerOrDefault(PrefKey.CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT));
+        connection.setReadTimeout(UserPreferences
+                .getIntegerOrDefault(PrefKey.READ_TIMEOUT, DEFAULT_READ_TIMEOUT));
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            int statusCode = httpConnection.getResponseCode();
+
+            if (statusCode >= 400) {
+                // Reading the error body lets the connection be reused
+                InputStream errorStream = httpConnection.getErrorStream();
+                if (errorStream != null) {
+                    new PooledStream(errorStream, null, null).close();
+                }
+
+                throw new HttpStatusException(statusCode, url);
+            }
+        }
+
+        return new PooledStream(connection.getInputStream(),
+                connection.getContentEncoding(), hostPermits);
+    }
+
+    /**
+     * Wraps the given stream in a decoder for the given content encoding.
+     */
+    private static InputStream decode(InputStream inputStream, String contentEncoding)
+            throws IOException {
+
+        if (contentEncoding == null) {
+            return inputStream;
+        }
+
+        switch (contentEncoding.trim().toLowerCase(Locale.ENGLISH)) {
+        case "gzip":
+        case "x-gzip":
+            return new GZIPInputStream(inputStream, 8192);
+        case "deflate":
+            return new InflaterInputStream(inputStream);
+        default:
+            return inputStream;
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Inner classes
+    //
+    // ----------------------------------------------
+
+    /**
+     * Thrown when a server responds with an error status.
+     */
+    public static class HttpStatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode, URL url) {
+            super("Server responded with status " + statusCode + " for " + url);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+    }
+
+    /**
+     * The raw response stream. Closing it drains whatever is left of a small
+     * response, so the connection goes back to the keep-alive pool, and
+     * returns the host's connection slot.
+     */
+    private static class PooledStream extends FilterInputStream {
+
+        private final String contentEncoding;
+        private Semaphore hostPermits;
+
+        public PooledStream(InputStream inputStream, String contentEncoding,
+                Semaphore hostPermits) {
+            super(inputStream);
+            this.contentEncoding = contentEncoding;
+            this.hostPermits = hostPermits;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } catch (IOException e) {
+                // The connection is dropped instead of pooled, nothing else to do
+            } finally {
+                try {
+                    super.close();
+                } finally {
+                    if (hostPermits != null) {
+                        hostPermits.release();
+                        hostPermits = null;
+                    }
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            int drained = 0;
+
+            int read;
+            while (drained < MAX_DRAIN_BYTES && (read = in.read(buffer)) != -1) {
+                drained += read;
+            }
+        }
+
+    }
+
+}
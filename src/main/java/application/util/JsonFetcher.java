@@ -27,7 +27,7 @@ public class JsonFetcher {
             InputStream urlInputStream = null;
 
             try {
-                urlInputStream = url.openStream();
+                urlInputStream = HttpFetcher.openStream(url);
             } catch (IOException urlStreamException) {
                 throw new RuntimeException("Could not establish a network connection",
                         urlStreamException);
@@ -0,0 +1,213 @@
+package application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+import application.model.ItemDictionary;
+
+import static org.junit.Assert.*;
+
+public class BuildDataFileTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File dataFile;
+
+    private BuildInfo wizardBuild;
+    private BuildInfo monkBuild;
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void createBuilds() {
+        dataFile = new File(temporaryFolder.getRoot(), "builds.data");
+
+        wizardBuild = new BuildInfo(D3Class.WIZARD,
+                "http://www.diablofans.com/builds/69831-tal-rashas-meteor", 1480000000L,
+                42);
+        wizardBuild.setBuildName("Tal Rasha's Meteor");
+        wizardBuild.setAuthor("Some\u00f6ne");
+        wizardBuild.setPatch("2.6.1");
+        wizardBuild.setFavorite(true);
+
+        BuildGear wizardGear = new BuildGear();
+        wizardGear.setItems(GearSlot.RINGS,
+                Arrays.asList("Convention of Elements", "Ring of Royal Grandeur"));
+        wizardGear.setCubeJewelry("Unity");
+        wizardBuild.setBuildGear(wizardGear);
+
+        monkBuild = new BuildInfo(D3Class.MONK,
+                "http://www.diablofans.com/builds/12345-monk", 1470000000L, -3);
+        monkBuild.setBuildName("Monk");
+        monkBuild.setAuthor("");
+        monkBuild.setPatch("2.6.0");
+        monkBuild.setBuildGear(new BuildGear());
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        LocalDate lastUpdated = LocalDate.of(2017, 3, 14);
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild, monkBuild), lastUpdated);
+
+        BuildDataFile.Contents contents = BuildDataFile.read(dataFile);
+        assertEquals(lastUpdated, contents.getLastUpdated());
+        assertEquals(2, contents.getBuilds().size());
+
+        Map<BuildInfo, BuildInfo> builds = new HashMap<>();
+        contents.getBuilds().forEach(b -> builds.put(b, b));
+
+        assertSameBuild(wizardBuild, builds.get(wizardBuild));
+        assertSameBuild(monkBuild, builds.get(monkBuild));
+    }
+
+    @Test
+    public void testItemIdsWithoutLoadingBuilds() throws IOException {
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild), null);
+        BuildDataFile.Contents contents = BuildDataFile.read(dataFile);
+
+        int[][] itemIds = contents.getItemIds(0);
+        assertEquals(2, itemIds[GearSlot.RINGS.ordinal()].length);
+        assertEquals(ItemDictionary.getId("Unity"),
+                itemIds[GearSlot.CUBE_JEWELRY.ordinal()][0]);
+        assertEquals(0, itemIds[GearSlot.HEAD.ordinal()].length);
+    }
+
+    @Test
+    public void testWriteWhileContentsAreInUse() throws IOException {
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild), null);
+        BuildDataFile.Contents contents = BuildDataFile.read(dataFile);
+
+        LocalDate lastUpdated = LocalDate.of(2017, 3, 14);
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild, monkBuild), lastUpdated);
+
+        // The builds read before the write still load
+        BuildInfo storedBuild = contents.getBuild(0);
+        assertEquals("Tal Rasha's Meteor", storedBuild.getBuildName());
+
+        assertEquals(2, BuildDataFile.read(dataFile).size());
+        assertEquals(lastUpdated, BuildDataFile.read(dataFile).getLastUpdated());
+    }
+
+    @Test
+    public void testCopiesStoredBuildsWithoutLoadingThem() throws IOException {
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild, monkBuild), null);
+        BuildDataFile.Contents contents = BuildDataFile.read(dataFile);
+
+        Set<BuildInfo> storedBuilds = contents.getBuilds();
+        BuildDataFile.write(dataFile, storedBuilds, null);
+
+        for (BuildInfo storedBuild : storedBuilds) {
+            assertNotNull(storedBuild.getLazyFields());
+        }
+
+        Map<BuildInfo, BuildInfo> builds = new HashMap<>();
+        BuildDataFile.read(dataFile).getBuilds().forEach(b -> builds.put(b, b));
+
+        assertSameBuild(wizardBuild, builds.get(wizardBuild));
+        assertSameBuild(monkBuild, builds.get(monkBuild));
+    }
+
+    @Test
+    public void testWritesNewGenerations() throws IOException {
+        BuildDataFile.write(dataFile, Arrays.asList(monkBuild), null);
+        BuildDataFile.Contents contents = BuildDataFile.read(dataFile);
+        BuildDataFile.write(dataFile, Arrays.asList(wizardBuild, monkBuild), null);
+
+        // The mapped generation is left alone, only its name is taken away
+        assertEquals("Monk", contents.getBuild(0).getBuildName());
+        assertTrue(BuildDataFile.exists(dataFile));
+        assertFalse(dataFile.exists());
+
+        assertEquals(2, BuildDataFile.read(dataFile).size());
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testNeverUpdated() throws IOException {
+        BuildDataFile.write(dataFile, Arrays.asList(monkBuild), null);
+        assertNull(BuildDataFile.read(dataFile).getLastUpdated());
+    }
+
+    @Test
+    public void testLegacyFileIsDetected() throws IOException {
+        assertFalse(BuildDataFile.isLegacyFile(dataFile));
+
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(
+                new FileOutputStream(dataFile))) {
+            outputStream.writeObject("Some old data");
+        }
+
+        assertTrue(BuildDataFile.isLegacyFile(dataFile));
+
+        BuildDataFile.write(dataFile, Arrays.asList(monkBuild), null);
+        assertFalse(BuildDataFile.isLegacyFile(dataFile));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownFileIsRejected() throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(dataFile)) {
+            outputStream.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        }
+
+        BuildDataFile.read(dataFile);
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private void assertSameBuild(BuildInfo expected, BuildInfo actual) {
+        assertNotNull(actual);
+
+        assertEquals(expected.getBuildUrlId(), actual.getBuildUrlId());
+        assertEquals(expected.getD3Class(), actual.getD3Class());
+        assertEquals(expected.getBuildUrl(), actual.getBuildUrl());
+        assertEquals(expected.getBuildName(), actual.getBuildName());
+        assertEquals(expected.getAuthor(), actual.getAuthor());
+        assertEquals(expected.getPatch(), actual.getPatch());
+        assertEquals(expected.getBuildScore(), actual.getBuildScore());
+        assertEquals(expected.getBuildLastUpdated(), actual.getBuildLastUpdated());
+        assertEquals(expected.isFavorite(), actual.isFavorite());
+
+        for (GearSlot gearSlot : GearSlot.values()) {
+            assertEquals(expected.getBuildGear().getItems(gearSlot),
+                    actual.getBuildGear().getItems(gearSlot));
+        }
+    }
+
+}
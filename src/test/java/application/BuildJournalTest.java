@@ -0,0 +1,125 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import application.BuildJournal.Operation;
+import application.model.BuildInfo;
+import application.model.D3Class;
+
+import static org.junit.Assert.*;
+
+public class BuildJournalTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+    private BuildJournal journal;
+
+    private BuildInfo wizardBuild;
+    private BuildInfo monkBuild;
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void createJournal() throws IOException {
+        journalFile = new File(temporaryFolder.getRoot(), "builds.journal");
+        journal = new BuildJournal(journalFile);
+
+        wizardBuild = new BuildInfo(D3Class.WIZARD,
+                "http://www.diablofans.com/builds/69831-tal-rashas-meteor", 1480000000L,
+                42);
+        monkBuild = new BuildInfo(D3Class.MONK,
+                "http://www.diablofans.com/builds/12345-monk", 1470000000L, -3);
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testReplaysInOrder() throws IOException {
+        assertTrue(journal.read().isEmpty());
+
+        journal.append(Operation.FAVORITE, wizardBuild);
+        journal.append(Operation.DELETE, monkBuild);
+        journal.append(Operation.UNFAVORITE, wizardBuild);
+
+        List<BuildJournal.Entry> entries = journal.read();
+        assertEquals(3, entries.size());
+
+        assertEquals(Operation.FAVORITE, entries.get(0).getOperation());
+        assertEquals(BuildJournal.getBuildKey(wizardBuild), entries.get(0).getBuildKey());
+
+        assertEquals(Operation.DELETE, entries.get(1).getOperation());
+        assertEquals(BuildJournal.getBuildKey(monkBuild), entries.get(1).getBuildKey());
+
+        assertEquals(Operation.UNFAVORITE, entries.get(2).getOperation());
+    }
+
+    @Test
+    public void testDiscardKeepsLaterRecords() throws IOException {
+        journal.append(Operation.FAVORITE, wizardBuild);
+        long savedPosition = journal.position();
+
+        journal.append(Operation.DELETE, monkBuild);
+        journal.discard(savedPosition);
+
+        List<BuildJournal.Entry> entries = journal.read();
+        assertEquals(1, entries.size());
+        assertEquals(Operation.DELETE, entries.get(0).getOperation());
+
+        // Positions handed out before the discard still line up
+        long secondPosition = journal.position();
+        journal.append(Operation.UNFAVORITE, wizardBuild);
+        journal.discard(secondPosition);
+
+        entries = journal.read();
+        assertEquals(1, entries.size());
+        assertEquals(Operation.UNFAVORITE, entries.get(0).getOperation());
+
+        journal.discard(journal.position());
+        assertTrue(journal.read().isEmpty());
+    }
+
+    @Test
+    public void testIgnoresRecordCutShort() throws IOException {
+        journal.append(Operation.FAVORITE, wizardBuild);
+        journal.append(Operation.DELETE, monkBuild);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile,
+                "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 2);
+        }
+
+        assertEquals(1, journal.read().size());
+
+        // The next record is written where the broken one started
+        journal.append(Operation.UNFAVORITE, wizardBuild);
+
+        List<BuildJournal.Entry> entries = journal.read();
+        assertEquals(2, entries.size());
+        assertEquals(Operation.UNFAVORITE, entries.get(1).getOperation());
+    }
+
+}
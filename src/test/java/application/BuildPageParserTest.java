@@ -0,0 +1,103 @@
+package application;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import application.model.BuildDetails;
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+
+import static org.junit.Assert.*;
+
+public class BuildPageParserTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final String BUILD_URL = "http://www.diablofans.com/builds/69831-tal-rashas-meteor";
+
+    private BuildInfo buildInfo;
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void parseBuildPage() throws IOException {
+        buildInfo = new BuildInfo(D3Class.WIZARD, BUILD_URL, 1480000000L, 42);
+
+        try (InputStream inputStream = getClass().getResourceAsStream("/build-page.html")) {
+            BuildPageParser.extractDetails(inputStream).applyTo(buildInfo);
+        }
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testBuildDetails() {
+        assertEquals("Tal Rasha's Meteor [2.6.1]", buildInfo.getBuildName());
+        assertEquals("Some&One", buildInfo.getAuthor());
+        assertEquals("2.6.1", buildInfo.getPatch());
+    }
+
+    @Test
+    public void testMissingByline() throws IOException {
+        String html = "<script>x</script><div class=\"build-detail\">"
+                + "<h2 class=\"build-title\">Untitled</h2></div>";
+
+        BuildDetails buildDetails = BuildPageParser.extractDetails(
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("Untitled", buildDetails.getBuildName());
+        assertEquals("", buildDetails.getPatch());
+    }
+
+    @Test
+    public void testCubedItems() {
+        BuildGear buildGear = buildInfo.getBuildGear();
+
+        assertEquals("Deathwish", buildGear.getCubeWeapon());
+        assertEquals("Aquila Cuirass", buildGear.getCubeArmor());
+        assertEquals("Convention of Elements", buildGear.getCubeJewelry());
+    }
+
+    @Test
+    public void testGearSlots() {
+        BuildGear buildGear = buildInfo.getBuildGear();
+
+        Set<String> headSlot = buildGear.getItems(GearSlot.HEAD);
+        assertEquals(2, headSlot.size());
+        assertTrue(headSlot.contains("Tal Rasha's Guise of Wisdom"));
+        assertTrue(headSlot.contains("The Swami"));
+
+        // Curly apostrophes are normalized
+        assertTrue(buildGear.getItems(GearSlot.SHOULDERS).contains("Tal Rasha's Mantle"));
+
+        // Empty entries are skipped, other text in the entry is ignored
+        Set<String> ringSlot = buildGear.getItems(GearSlot.RINGS);
+        assertEquals(2, ringSlot.size());
+        assertTrue(ringSlot.contains("Convention of Elements"));
+        assertTrue(ringSlot.contains("Ring of Royal Grandeur"));
+
+        assertTrue(buildGear.getItems(GearSlot.OFFHAND).isEmpty());
+        assertTrue(buildGear.getItems(GearSlot.WEAPON).contains("Deathwish"));
+    }
+
+}
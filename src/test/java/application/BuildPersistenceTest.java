@@ -0,0 +1,99 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import application.model.BuildInfo;
+import application.model.D3Class;
+
+import static org.junit.Assert.*;
+
+public class BuildPersistenceTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File dataFile;
+    private BuildJournal journal;
+
+    private AtomicInteger snapshotCount = new AtomicInteger();
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void createFiles() {
+        dataFile = new File(temporaryFolder.getRoot(), "builds.data");
+        journal = new BuildJournal(new File(temporaryFolder.getRoot(), "builds.journal"));
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testCoalescesChanges() throws IOException {
+        BuildPersistence persistence = createPersistence(60_000);
+
+        persistence.markDirty();
+        persistence.markDirty();
+        persistence.markDirty();
+
+        assertFalse(BuildDataFile.exists(dataFile));
+
+        persistence.flush();
+        persistence.flush();
+
+        assertTrue(BuildDataFile.exists(dataFile));
+        assertEquals(1, snapshotCount.get());
+    }
+
+    @Test
+    public void testDiscardsSavedJournal() throws IOException {
+        BuildInfo buildInfo = new BuildInfo(D3Class.MONK,
+                "http://www.diablofans.com/builds/12345-monk", 1470000000L, -3);
+
+        journal.append(BuildJournal.Operation.FAVORITE, buildInfo);
+
+        BuildPersistence persistence = createPersistence(60_000);
+        persistence.markDirty();
+        persistence.flush();
+
+        assertTrue(journal.read().isEmpty());
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private BuildPersistence createPersistence(long writeDelayMillis) {
+        return new BuildPersistence(dataFile, journal, () -> {
+            snapshotCount.incrementAndGet();
+
+            return new BuildPersistence.Snapshot(Collections.emptyList(),
+                    LocalDate.of(2017, 1, 1), journal.position());
+        }, writeDelayMillis);
+    }
+
+}
@@ -0,0 +1,190 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+
+import static org.junit.Assert.*;
+
+public class BuildQueryTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final String COE = "Convention of Elements";
+    private final String RORG = "Ring of Royal Grandeur";
+    private final String TAL_HELM = "Tal Rasha's Guise of Wisdom";
+
+    private ItemIndex itemIndex;
+
+    private BuildInfo wizardTal;
+    private BuildInfo wizardCubedCoe;
+    private BuildInfo barbCoe;
+    private BuildInfo monkRorg;
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void buildIndex() {
+        wizardTal = createBuild(1, D3Class.WIZARD, "2.6.1", 500, "");
+        wizardTal.getBuildGear().setItems(GearSlot.HEAD, Arrays.asList(TAL_HELM));
+        wizardTal.getBuildGear().setItems(GearSlot.RINGS, Arrays.asList(COE));
+
+        wizardCubedCoe = createBuild(2, D3Class.WIZARD, "2.6.1", 50, COE);
+        wizardCubedCoe.getBuildGear().setItems(GearSlot.RINGS, Arrays.asList(RORG));
+
+        barbCoe = createBuild(3, D3Class.BARBARIAN, "2.6.0", 300, "");
+        barbCoe.getBuildGear().setItems(GearSlot.RINGS, Arrays.asList(COE, RORG));
+
+        monkRorg = createBuild(4, D3Class.MONK, "2.6.1", 10, RORG);
+
+        itemIndex = ItemIndex
+                .build(Arrays.asList(wizardTal, wizardCubedCoe, barbCoe, monkRorg));
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testItemMatchesWornAndCubed() {
+        assertMatches(BuildQuery.item(COE), wizardTal, wizardCubedCoe, barbCoe);
+
+        // Case doesn't matter
+        assertMatches(BuildQuery.item("convention of ELEMENTS"), wizardTal,
+                wizardCubedCoe, barbCoe);
+    }
+
+    @Test
+    public void testSlotsAndCube() {
+        assertMatches(BuildQuery.item(COE, GearSlot.RINGS), wizardTal, barbCoe);
+        assertMatches(BuildQuery.cubed(RORG), monkRorg);
+
+        assertTrue(itemIndex.isCubed(wizardCubedCoe, COE));
+        assertFalse(itemIndex.isCubed(wizardTal, COE));
+    }
+
+    @Test
+    public void testAndNot() {
+        BuildQuery query = BuildQuery.item(COE).and(BuildQuery.item(RORG))
+                .andNot(BuildQuery.d3Class(D3Class.WIZARD));
+
+        assertMatches(query, barbCoe);
+    }
+
+    @Test
+    public void testOrAndNot() {
+        BuildQuery query = BuildQuery.item(TAL_HELM)
+                .or(BuildQuery.d3Class(D3Class.MONK));
+
+        assertMatches(query, wizardTal, monkRorg);
+        assertMatches(BuildQuery.not(query), wizardCubedCoe, barbCoe);
+    }
+
+    @Test
+    public void testPatchAndScore() {
+        BuildQuery query = BuildQuery.patch("2.6.1").and(BuildQuery.score(20, 1000));
+        assertMatches(query, wizardTal, wizardCubedCoe);
+    }
+
+    @Test
+    public void testScoreRanges() {
+        assertMatches(BuildQuery.score(50, 300), wizardCubedCoe, barbCoe);
+        assertMatches(BuildQuery.score(301, 499));
+        assertMatches(BuildQuery.score(300, 50));
+
+        // A new score moves the build to another range
+        ItemIndex originalIndex = itemIndex;
+        itemIndex = itemIndex.withChanges(Collections.singleton(barbCoe.withBuildScore(5)),
+                Collections.emptySet());
+
+        assertMatches(BuildQuery.score(50, 300), wizardCubedCoe);
+        assertMatches(BuildQuery.score(0, 10), barbCoe, monkRorg);
+
+        assertEquals(2, originalIndex.query(BuildQuery.score(50, 300)).size());
+    }
+
+    @Test
+    public void testUnknownItem() {
+        assertMatches(BuildQuery.item("Unknown item"));
+        assertMatches(BuildQuery.not(BuildQuery.item("Unknown item")), wizardTal,
+                wizardCubedCoe, barbCoe, monkRorg);
+    }
+
+    @Test
+    public void testRemovedBuildsDontMatch() {
+        ItemIndex originalIndex = itemIndex;
+        itemIndex = itemIndex.withChanges(Collections.emptySet(),
+                Collections.singleton(barbCoe));
+
+        assertMatches(BuildQuery.item(COE), wizardTal, wizardCubedCoe);
+        assertMatches(BuildQuery.d3Class(D3Class.BARBARIAN));
+
+        // The index it was made from is left alone
+        assertEquals(3, originalIndex.query(BuildQuery.item(COE)).size());
+    }
+
+    @Test
+    public void testAddedBuildsMatch() {
+        BuildInfo barbRorg = createBuild(3, D3Class.BARBARIAN, "2.6.1", 300, RORG);
+        BuildInfo monkCoe = createBuild(5, D3Class.MONK, "2.6.1", 20, COE);
+
+        ItemIndex originalIndex = itemIndex;
+        itemIndex = itemIndex.withChanges(Arrays.asList(barbRorg, monkCoe),
+                Collections.emptySet());
+
+        // barbRorg replaces barbCoe, they're the same build
+        assertMatches(BuildQuery.item(COE), wizardTal, wizardCubedCoe, monkCoe);
+        assertMatches(BuildQuery.cubed(RORG), monkRorg, barbRorg);
+        assertEquals(5, itemIndex.size());
+
+        assertEquals(1, originalIndex.query(BuildQuery.cubed(RORG)).size());
+        assertEquals(4, originalIndex.size());
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    private void assertMatches(BuildQuery query, BuildInfo... expectedBuilds) {
+        Set<BuildInfo> matchingBuilds = itemIndex.query(query);
+
+        assertEquals(expectedBuilds.length, matchingBuilds.size());
+        assertTrue(matchingBuilds.containsAll(Arrays.asList(expectedBuilds)));
+    }
+
+    private BuildInfo createBuild(int id, D3Class d3Class, String patch, int score,
+            String cubedJewelry) {
+
+        BuildInfo buildInfo = new BuildInfo(d3Class,
+                "http://www.diablofans.com/builds/" + id + "-test-build", 0, score);
+
+        BuildGear buildGear = new BuildGear();
+        buildGear.setCubeJewelry(cubedJewelry);
+
+        buildInfo.setBuildGear(buildGear);
+        buildInfo.setPatch(patch);
+
+        return buildInfo;
+    }
+
+}
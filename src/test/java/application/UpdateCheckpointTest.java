@@ -0,0 +1,146 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import application.model.BuildGear;
+import application.model.BuildInfo;
+import application.model.D3Class;
+import application.model.GearSlot;
+
+import static org.junit.Assert.*;
+
+public class UpdateCheckpointTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private static final List<String> PAGE_URLS = Arrays.asList(
+            "http://www.diablofans.com/builds?filter-class=64&page=1",
+            "http://www.diablofans.com/builds?filter-class=64&page=2");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File checkpointFile;
+
+    private BuildInfo wizardBuild;
+    private BuildInfo monkBuild;
+
+    // ----------------------------------------------
+    //
+    // Setup
+    //
+    // ----------------------------------------------
+
+    @Before
+    public void createBuilds() {
+        checkpointFile = new File(temporaryFolder.getRoot(), "update.checkpoint");
+
+        wizardBuild = new BuildInfo(D3Class.WIZARD,
+                "http://www.diablofans.com/builds/69831-tal-rashas-meteor", 1480000000L,
+                42);
+        monkBuild = new BuildInfo(D3Class.MONK,
+                "http://www.diablofans.com/builds/12345-monk", 1470000000L, 3);
+    }
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testResumesPagesAndBuilds() throws IOException {
+        UpdateCheckpoint checkpoint = new UpdateCheckpoint(checkpointFile);
+        checkpoint.open(PAGE_URLS);
+
+        checkpoint.addPage(PAGE_URLS.get(0), Arrays.asList(wizardBuild, monkBuild));
+
+        wizardBuild.setBuildName("Tal Rasha's Meteor");
+        wizardBuild.setAuthor("sidola");
+        wizardBuild.setPatch("2.4.3");
+
+        BuildGear buildGear = new BuildGear();
+        buildGear.setItems(GearSlot.HEAD, Collections.singleton("The Swami"));
+        wizardBuild.setBuildGear(buildGear);
+
+        checkpoint.addBuild(wizardBuild);
+        checkpoint.close();
+
+        UpdateCheckpoint resumed = new UpdateCheckpoint(checkpointFile);
+        resumed.open(PAGE_URLS);
+
+        Set<BuildInfo> listedBuilds = resumed.getCompletedPages().get(PAGE_URLS.get(0));
+        assertEquals(1, resumed.getCompletedPages().size());
+        assertTrue(listedBuilds.contains(wizardBuild));
+        assertTrue(listedBuilds.contains(monkBuild));
+
+        BuildInfo resumedBuild = resumed.getCompletedBuilds().iterator().next();
+        assertEquals(wizardBuild, resumedBuild);
+        assertEquals(wizardBuild.getBuildUrl(), resumedBuild.getBuildUrl());
+        assertEquals(1480000000L, resumedBuild.getBuildLastUpdated());
+        assertEquals("sidola", resumedBuild.getAuthor());
+        assertEquals(Collections.singleton("The Swami"),
+                resumedBuild.getBuildGear().getItems(GearSlot.HEAD));
+
+        resumed.delete();
+        assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testStartsOverForOtherPages() throws IOException {
+        UpdateCheckpoint checkpoint = new UpdateCheckpoint(checkpointFile);
+        checkpoint.open(PAGE_URLS);
+        checkpoint.addPage(PAGE_URLS.get(0), Arrays.asList(wizardBuild));
+        checkpoint.close();
+
+        checkpoint.open(PAGE_URLS.subList(0, 1));
+        assertTrue(checkpoint.getCompletedPages().isEmpty());
+        checkpoint.close();
+
+        // The checkpoint for the original pages is gone as well
+        checkpoint.open(PAGE_URLS);
+        assertTrue(checkpoint.getCompletedPages().isEmpty());
+        checkpoint.close();
+    }
+
+    @Test
+    public void testDropsRecordCutShort() throws IOException {
+        UpdateCheckpoint checkpoint = new UpdateCheckpoint(checkpointFile);
+        checkpoint.open(PAGE_URLS);
+        checkpoint.addPage(PAGE_URLS.get(0), Arrays.asList(wizardBuild));
+        checkpoint.addPage(PAGE_URLS.get(1), Arrays.asList(monkBuild));
+        checkpoint.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile,
+                "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 2);
+        }
+
+        checkpoint.open(PAGE_URLS);
+        assertEquals(1, checkpoint.getCompletedPages().size());
+
+        // The next record is written where the broken one started
+        checkpoint.addPage(PAGE_URLS.get(1), Arrays.asList(monkBuild));
+        checkpoint.close();
+
+        checkpoint.open(PAGE_URLS);
+        assertEquals(2, checkpoint.getCompletedPages().size());
+        checkpoint.close();
+    }
+
+}
@@ -0,0 +1,124 @@
+package application.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import application.util.ConcurrencyLimiter.Permit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final long FLAT_LATENCY = 100_000_000L;
+    private final long SLOW_LATENCY = 5 * FLAT_LATENCY;
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testInitialLimitIsClamped() {
+        assertEquals(10, new ConcurrencyLimiter(50, 1, 10).getLimit());
+        assertEquals(2, new ConcurrencyLimiter(0, 2, 10).getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new ConcurrencyLimiter(5, 10, 1);
+    }
+
+    @Test
+    public void testGrowsWhileLatencyIsFlat() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 16);
+
+        runRound(limiter, FLAT_LATENCY);
+        runRound(limiter, FLAT_LATENCY);
+
+        assertTrue(limiter.getLimit() > 4);
+    }
+
+    @Test
+    public void testDoesNotGrowWhenLatencyRises() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 16);
+
+        runRound(limiter, FLAT_LATENCY);
+        int limit = limiter.getLimit();
+
+        runRound(limiter, SLOW_LATENCY);
+        assertEquals(limit, limiter.getLimit());
+    }
+
+    @Test
+    public void testNeverGrowsPastMax() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 6);
+
+        for (int i = 0; i < 20; i++) {
+            runRound(limiter, FLAT_LATENCY);
+        }
+
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void testBacksOffOncePerRound() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 16);
+        List<Permit> permits = acquireAll(limiter);
+
+        // Every request in the round failing only halves the limit once
+        permits.forEach(Permit::overload);
+        assertEquals(4, limiter.getLimit());
+
+        // Requests started after the back off can trigger the next one
+        acquireAll(limiter).get(0).overload();
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testIgnoredFailuresKeepTheLimit() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 16);
+
+        acquireAll(limiter).forEach(Permit::ignore);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    // ----------------------------------------------
+    //
+    // Private API
+    //
+    // ----------------------------------------------
+
+    /**
+     * Fills the limiter and completes every request with the given latency.
+     */
+    private void runRound(ConcurrencyLimiter limiter, long latency)
+            throws InterruptedException {
+
+        for (Permit permit : acquireAll(limiter)) {
+            limiter.onSuccess(permit, latency);
+        }
+    }
+
+    private List<Permit> acquireAll(ConcurrencyLimiter limiter)
+            throws InterruptedException {
+
+        List<Permit> permits = new ArrayList<>();
+        int limit = limiter.getLimit();
+
+        for (int i = 0; i < limit; i++) {
+            permits.add(limiter.acquire());
+        }
+
+        return permits;
+    }
+
+}
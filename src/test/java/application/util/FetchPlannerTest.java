@@ -0,0 +1,77 @@
+package application.util;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import application.model.D3Class;
+
+import static org.junit.Assert.*;
+
+public class FetchPlannerTest {
+
+    // ----------------------------------------------
+    //
+    // Fields
+    //
+    // ----------------------------------------------
+
+    private final String BARB_PATCH_2_4 = "http://www.diablofans.com/builds?filter-build=7&filter-has-spell-2=-1&filter-class=2";
+
+    /**
+     * Same options as {@link #BARB_PATCH_2_4} in a different order, for
+     * barbarian and demon hunter
+     */
+    private final String BARB_DH_PATCH_2_4 = "http://www.diablofans.com/builds?filter-class=6&filter-has-spell-2=-1&filter-build=7&page=2";
+
+    private final String BARB_PATCH_2_3 = "http://www.diablofans.com/builds?filter-build=6&filter-has-spell-2=-1&filter-class=2";
+
+    // ----------------------------------------------
+    //
+    // Public API Tests
+    //
+    // ----------------------------------------------
+
+    @Test
+    public void testMergesOverlappingUrls() {
+        FetchPlanner fetchPlanner = new FetchPlanner();
+        fetchPlanner.add(BARB_PATCH_2_4, 3);
+        fetchPlanner.add(BARB_DH_PATCH_2_4, 1);
+
+        List<FetchPlanner.Listing> listings = fetchPlanner.plan();
+        assertEquals(2, listings.size());
+
+        assertEquals(D3Class.BARBARIAN, listings.get(0).getD3Class());
+        assertEquals(3, listings.get(0).getPageCount());
+
+        assertEquals(D3Class.DEMON_HUNTER, listings.get(1).getD3Class());
+        assertEquals(1, listings.get(1).getPageCount());
+    }
+
+    @Test
+    public void testKeepsDistinctUrls() {
+        FetchPlanner fetchPlanner = new FetchPlanner();
+        fetchPlanner.add(BARB_PATCH_2_4, 1);
+        fetchPlanner.add(BARB_PATCH_2_3, 1);
+
+        List<FetchPlanner.Listing> listings = fetchPlanner.plan();
+        assertEquals(2, listings.size());
+        assertNotEquals(listings.get(0).getPageUrl(1), listings.get(1).getPageUrl(1));
+    }
+
+    @Test
+    public void testPageUrls() {
+        FetchPlanner fetchPlanner = new FetchPlanner();
+        fetchPlanner.add(BARB_DH_PATCH_2_4, 2);
+
+        FetchPlanner.Listing listing = fetchPlanner.plan().get(1);
+
+        assertEquals(
+                "http://www.diablofans.com/builds?filter-build=7&filter-has-spell-2=-1&filter-class=4",
+                listing.getPageUrl(1));
+        assertEquals(
+                "http://www.diablofans.com/builds?filter-build=7&filter-has-spell-2=-1&filter-class=4&page=2",
+                listing.getPageUrl(2));
+    }
+
+}